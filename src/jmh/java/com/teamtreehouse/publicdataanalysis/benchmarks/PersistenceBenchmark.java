@@ -0,0 +1,132 @@
+package com.teamtreehouse.publicdataanalysis.benchmarks;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.CountryBuilder;
+import com.teamtreehouse.publicdataanalysis.utils.CountryRepository;
+import com.teamtreehouse.publicdataanalysis.utils.Database;
+import com.teamtreehouse.publicdataanalysis.utils.IndicatorSummary;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Hibernate read paths against a temporary H2 file database
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+    private static final String CODE_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    // At most 36^3 distinct 3-character codes
+    @Param({"1000", "10000"})
+    private int rows;
+
+    private Path directory;
+    private SessionFactory sessionFactory;
+    private CountryRepository cachedRepository;
+    private CountryRepository uncachedRepository;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("worldbank-jmh");
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("hibernate.connection.url", "jdbc:h2:" + directory.resolve("worldbank").toAbsolutePath());
+        settings.put("hibernate.hbm2ddl.auto", "create");
+        sessionFactory = Database.buildSessionFactory(settings);
+
+        Random data = new Random(42);
+        StatelessSession session = sessionFactory.openStatelessSession();
+        session.beginTransaction();
+        for (int i = 0; i < rows; i++) {
+            session.insert(new CountryBuilder(code(i), "Country " + i)
+                    .withInternetUsers(data.nextDouble() * 100)
+                    .withAdultLiteracyRate(data.nextBoolean() ? null : data.nextDouble() * 100)
+                    .build());
+        }
+        session.getTransaction().commit();
+        session.close();
+
+        cachedRepository = new CountryRepository(sessionFactory);
+        cachedRepository.findAll();
+        uncachedRepository = new CountryRepository(sessionFactory);
+        random = new Random(7);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sessionFactory.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<Country> getCountries() {
+        // Full table scan, as on a cache miss
+        uncachedRepository.invalidate();
+        return uncachedRepository.findAll();
+    }
+
+    @Benchmark
+    public List<Country> getCountriesCached() {
+        return cachedRepository.findAll();
+    }
+
+    @Benchmark
+    public Country getCountryByCode() {
+        // Primary key lookup, as on a cache miss
+        uncachedRepository.invalidate();
+        return uncachedRepository.findByCode(code(random.nextInt(rows)));
+    }
+
+    @Benchmark
+    public Country getCountryByCodeCached() {
+        return cachedRepository.findByCode(code(random.nextInt(rows)));
+    }
+
+    @Benchmark
+    public IndicatorSummary aggregateStatistics() {
+        Session session = sessionFactory.openSession();
+        try {
+            return IndicatorSummary.fromDatabase(session);
+        } finally {
+            session.close();
+        }
+    }
+
+    private static String code(int index) {
+        int base = CODE_CHARACTERS.length();
+        return new String(new char[] {
+                CODE_CHARACTERS.charAt(index / (base * base) % base),
+                CODE_CHARACTERS.charAt(index / base % base),
+                CODE_CHARACTERS.charAt(index % base)
+        });
+    }
+}
@@ -0,0 +1,127 @@
+package com.teamtreehouse.publicdataanalysis.benchmarks;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.CountryBuilder;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorTable;
+import com.teamtreehouse.publicdataanalysis.utils.DataTableRenderer;
+import com.teamtreehouse.publicdataanalysis.utils.DecimalFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// number formatting and data table rendering (to a discarding writer, so I/O is excluded)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderingBenchmark {
+    @Param({"1000", "100000"})
+    private int rows;
+
+    private double[] values;
+    private List<Country> countries;
+    private IndicatorTable table;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        values = new double[rows];
+        countries = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            values[i] = random.nextDouble() * 100;
+            countries.add(new CountryBuilder(String.format("%03d", i % 1000), "Country " + i)
+                    .withInternetUsers(values[i])
+                    .withAdultLiteracyRate(random.nextBoolean() ? null : random.nextDouble() * 100)
+                    .build());
+        }
+        table = IndicatorTable.fromCountries(countries);
+    }
+
+    @Benchmark
+    public void roundUpAndFormat(Blackhole blackhole) {
+        // Formatting used by Menu.roundUpAndFormat
+        for (double value : values) {
+            blackhole.consume(DecimalFormatter.format(value, 2));
+        }
+    }
+
+    @Benchmark
+    public void legacyRoundUpAndFormat(Blackhole blackhole) {
+        // The original BigDecimal + String.format implementation, for comparison
+        for (double value : values) {
+            blackhole.consume(String.format(
+                    "%.2f",
+                    new BigDecimal(value).setScale(2, RoundingMode.HALF_UP).doubleValue()
+            ));
+        }
+    }
+
+    @Benchmark
+    public void renderTable(Blackhole blackhole) throws IOException {
+        DataTableRenderer renderer = new DataTableRenderer(new DiscardingWriter(blackhole));
+        renderer.writeHeader();
+        renderer.writeRows(table);
+        renderer.flush();
+    }
+
+    @Benchmark
+    public void legacyRenderTable(Blackhole blackhole) {
+        // The original per-row String.format rendering, for comparison
+        for (Country country : countries) {
+            blackhole.consume(String.format(
+                    "%-10s%-45s%15s%10s",
+                    country.getCode(),
+                    country.getName(),
+                    country.getInternetUsers() == null ? "--" : DecimalFormatter.format(country.getInternetUsers(), 2),
+                    country.getAdultLiteracyRate() == null ? "--" : DecimalFormatter.format(country.getAdultLiteracyRate(), 2)
+            ));
+        }
+    }
+
+    // writer that only hands the written length to the blackhole
+    private static class DiscardingWriter extends Writer {
+        private final Blackhole blackhole;
+
+        private DiscardingWriter(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            blackhole.consume(length);
+        }
+
+        @Override
+        public void write(String text) {
+            blackhole.consume(text.length());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
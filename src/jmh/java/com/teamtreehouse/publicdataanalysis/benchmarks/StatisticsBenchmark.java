@@ -0,0 +1,107 @@
+package com.teamtreehouse.publicdataanalysis.benchmarks;
+
+import com.teamtreehouse.publicdataanalysis.utils.IndicatorQuantiles;
+import com.teamtreehouse.publicdataanalysis.utils.IndicatorStats;
+import com.teamtreehouse.publicdataanalysis.utils.PairedStats;
+import com.teamtreehouse.publicdataanalysis.utils.RankCorrelation;
+import com.teamtreehouse.publicdataanalysis.utils.Statistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// statistics over indicator columns of increasing size
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private List<Double> indicatorA;
+    private List<Double> indicatorB;
+    private Map<String, Double> indicatorAStats;
+    private Map<String, Double> indicatorBStats;
+    private double[] columnA;
+    private double[] columnB;
+
+    @Setup
+    public void setUp() {
+        // Correlated columns in the range of the World Bank percentages
+        Random random = new Random(42);
+        indicatorA = new ArrayList<>(size);
+        indicatorB = new ArrayList<>(size);
+        columnA = new double[size];
+        columnB = new double[size];
+        for (int i = 0; i < size; i++) {
+            double a = random.nextDouble() * 100;
+            double b = Math.min(100, 40 + a * 0.5 + random.nextGaussian() * 10);
+            indicatorA.add(a);
+            indicatorB.add(b);
+            columnA[i] = a;
+            columnB[i] = b;
+        }
+        indicatorAStats = Statistics.calculateStatistics(indicatorA);
+        indicatorBStats = Statistics.calculateStatistics(indicatorB);
+    }
+
+    @Benchmark
+    public Map<String, Double> calculateStatistics() {
+        return Statistics.calculateStatistics(indicatorA);
+    }
+
+    @Benchmark
+    public Double calculateCorrelation() {
+        return Statistics.calculateCorrelation(indicatorA, indicatorAStats, indicatorB, indicatorBStats);
+    }
+
+    @Benchmark
+    public IndicatorStats summarize() {
+        return Statistics.summarize(columnA);
+    }
+
+    @Benchmark
+    public PairedStats correlate() {
+        return Statistics.correlate(columnA, columnB);
+    }
+
+    @Benchmark
+    public double spearman() {
+        return RankCorrelation.spearman(columnA, columnB);
+    }
+
+    @Benchmark
+    public double kendall() {
+        return RankCorrelation.kendall(columnA, columnB);
+    }
+
+    @Benchmark
+    public IndicatorQuantiles quantiles() {
+        return Statistics.quantiles(columnA);
+    }
+
+    @Benchmark
+    public double sortedMedian() {
+        // Exact baseline: copy and sort the whole column
+        double[] sorted = Arrays.copyOf(columnA, columnA.length);
+        Arrays.sort(sorted);
+        return sorted[(sorted.length - 1) / 2];
+    }
+}
@@ -1,20 +1,44 @@
 package com.teamtreehouse.publicdataanalysis;
 
+import com.teamtreehouse.publicdataanalysis.utils.BatchCommands;
+import com.teamtreehouse.publicdataanalysis.utils.Database;
 import com.teamtreehouse.publicdataanalysis.utils.Menu;
+import com.teamtreehouse.publicdataanalysis.utils.StartupTimings;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 public class Application {
     private static final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(System.in));
 
     public static void main(String[] args) {
-        Menu menu = new Menu(); // only has static methods (instance not used), but instantiated to kick-off session builder at the beginning.
+        // With arguments, run one batch command and exit without starting the menu (or Hibernate, for reads)
+        if (args.length > 0) {
+            int exitCode = BatchCommands.run(args, System.out, System.err);
+            printStartupReport();
+            System.exit(exitCode);
+        }
+        long start = StartupTimings.start();
+        Database.startBootstrap(); // builds the session factory in the background while the menu renders
+        try {
+            long journalStart = StartupTimings.start();
+            Menu.openJournal();
+            StartupTimings.record("open journal", journalStart);
+        } catch (UncheckedIOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
         int selectedOption = 0;
-        while (selectedOption != 6) {
+        boolean isMenuRendered = false;
+        while (selectedOption != 13) {
             displayMenu();
+            if (!isMenuRendered) {
+                isMenuRendered = true;
+                StartupTimings.record("main to first menu", start);
+            }
             try {
                 selectedOption = getSelectedOption();
             } catch (IOException e) {
@@ -24,6 +48,13 @@ public class Application {
         }
     }
 
+    private static void printStartupReport() {
+        // Startup phase timings on stderr with -Dstartup.report=true
+        if (Boolean.getBoolean("startup.report")) {
+            System.err.print(StartupTimings.report());
+        }
+    }
+
     private static void displayMenu() {
         // Display menu options
         System.out.println(String.format(
@@ -34,11 +65,18 @@ public class Application {
         ));
         List<String> menuOptions = Arrays.asList(
                 "1. View data table",
-                "2. View statistics",
-                "3. Add country",
-                "4. Edit country",
-                "5. Delete country",
-                "6. Exit"
+                "2. View data table by page",
+                "3. View statistics",
+                "4. Add country",
+                "5. Edit country",
+                "6. Delete country",
+                "7. Import countries",
+                "8. View statistics by year",
+                "9. View correlation",
+                "10. View metrics",
+                "11. Query countries",
+                "12. Search countries",
+                "13. Exit"
         );
         menuOptions.stream().forEach(menuOption -> System.out.printf("%s%n", menuOption));
     }
@@ -49,7 +87,7 @@ public class Application {
         System.out.print(String.format(
                 "%s%n%s",
                 String.join("", Collections.nCopies(40, "-")),
-                "Enter option number (1-6): "
+                "Enter option number (1-13): "
         ));
         selectedOption = Integer.parseInt(bufferedReader.readLine());
         return selectedOption;
@@ -64,11 +102,24 @@ public class Application {
                 Menu.viewDataTable();
                 break;
             case 2:
+                // View data table by page
+                System.out.printf("%nViewing data table by page...%n%n");
+                boolean isPaged = false;
+                while (!isPaged) {
+                    try {
+                        isPaged = Menu.viewDataTablePages();
+                    }
+                    catch (Exception e) {
+                        System.out.println(e.getMessage());
+                    }
+                }
+                break;
+            case 3:
                 // View statistics
                 System.out.printf("%nViewing statistics...%n%n");
                 Menu.viewStatistics();
                 break;
-            case 3:
+            case 4:
                 // Add country
                 System.out.printf("%nAdding country...%n%n");
                 boolean isAdded = false;
@@ -81,7 +132,7 @@ public class Application {
                     }
                 }
                 break;
-            case 4:
+            case 5:
                 // Edit country
                 System.out.printf("%nEditing country...%n%n");
                 boolean isEdited = false;
@@ -94,7 +145,7 @@ public class Application {
                     }
                 }
                 break;
-            case 5:
+            case 6:
                 // Delete country
                 System.out.printf("%nDeleting country...%n%n");
                 boolean isDeleted = false;
@@ -107,13 +158,84 @@ public class Application {
                     }
                 }
                 break;
-            case 6:
+            case 7:
+                // Import countries
+                System.out.printf("%nImporting countries...%n%n");
+                boolean isImported = false;
+                while (!isImported) {
+                    try {
+                        isImported = Menu.importCountries();
+                    }
+                    catch (Exception e) {
+                        System.out.println(e.getMessage());
+                    }
+                }
+                break;
+            case 8:
+                // View statistics by year
+                System.out.printf("%nViewing statistics by year...%n%n");
+                boolean isViewed = false;
+                while (!isViewed) {
+                    try {
+                        isViewed = Menu.viewStatisticsByYear();
+                    }
+                    catch (Exception e) {
+                        System.out.println(e.getMessage());
+                    }
+                }
+                break;
+            case 9:
+                // View correlation
+                System.out.printf("%nViewing correlation...%n%n");
+                boolean isCorrelated = false;
+                while (!isCorrelated) {
+                    try {
+                        isCorrelated = Menu.viewCorrelation();
+                    }
+                    catch (Exception e) {
+                        System.out.println(e.getMessage());
+                    }
+                }
+                break;
+            case 10:
+                // View metrics
+                System.out.printf("%nViewing metrics...%n%n");
+                Menu.viewMetrics();
+                break;
+            case 11:
+                // Query countries
+                System.out.printf("%nQuerying countries...%n%n");
+                boolean isQueried = false;
+                while (!isQueried) {
+                    try {
+                        isQueried = Menu.queryCountries();
+                    }
+                    catch (Exception e) {
+                        System.out.println(e.getMessage());
+                    }
+                }
+                break;
+            case 12:
+                // Search countries
+                System.out.printf("%nSearching countries...%n%n");
+                boolean isSearched = false;
+                while (!isSearched) {
+                    try {
+                        isSearched = Menu.searchCountries();
+                    }
+                    catch (Exception e) {
+                        System.out.println(e.getMessage());
+                    }
+                }
+                break;
+            case 13:
                 // Exit
                 System.out.printf("%nExiting...%n%n");
+                printStartupReport();
                 System.exit(0);
                 break;
             default:
-                System.out.printf("%nInvalid option. Please enter a number from 1-6.");
+                System.out.printf("%nInvalid option. Please enter a number from 1-13.");
         }
     }
 
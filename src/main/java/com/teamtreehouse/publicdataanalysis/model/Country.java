@@ -1,10 +1,25 @@
 package com.teamtreehouse.publicdataanalysis.model;
 
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
+
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Version;
 
 @Entity
+// Updates write only the changed columns, so concurrent edits of different columns do not rewrite each other's values
+@DynamicUpdate
+// (column, code) indexes back keyset pagination and filtered queries on each column; the descending indexes for
+// "top N by indicator" queries are created by SchemaVersionCheck (Hibernate drops DESC from columnList)
+@Table(indexes = {
+        @Index(name = "idx_country_name_code", columnList = "name, code"),
+        @Index(name = "idx_country_internet_users_code", columnList = "internetUsers, code"),
+        @Index(name = "idx_country_adult_literacy_rate_code", columnList = "adultLiteracyRate, code")
+})
 public class Country {
     @Id
     private String code;
@@ -18,6 +33,12 @@ public class Country {
     @Column
     private Double adultLiteracyRate;
 
+    // Optimistic lock: every update checks and increments it; the default fills rows written before it existed
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
+
     // Default constructor for JPA
     public Country() {
     }
@@ -62,6 +83,14 @@ public class Country {
         this.adultLiteracyRate = adultLiteracyRate;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "Country{" +
@@ -69,6 +98,7 @@ public class Country {
                 ", name='" + name + '\'' +
                 ", internetUsers=" + internetUsers +
                 ", adultLiteracyRate=" + adultLiteracyRate +
+                ", version=" + version +
                 '}';
     }
 }
@@ -0,0 +1,38 @@
+package com.teamtreehouse.publicdataanalysis.model;
+
+import java.util.function.Function;
+
+// numeric indicator columns of the country table
+public enum Indicator {
+    INTERNET_USERS("internetUsers", "Internet Users", "IT.NET.USER.ZS", Country::getInternetUsers),
+    ADULT_LITERACY_RATE("adultLiteracyRate", "Adult Literacy Rate", "SE.ADT.LITR.ZS", Country::getAdultLiteracyRate);
+
+    private final String propertyName;
+    private final String label;
+    private final String worldBankCode;
+    private final Function<Country, Double> getter;
+
+    Indicator(String propertyName, String label, String worldBankCode, Function<Country, Double> getter) {
+        this.propertyName = propertyName;
+        this.label = label;
+        this.worldBankCode = worldBankCode;
+        this.getter = getter;
+    }
+
+    public String getPropertyName() {
+        return propertyName;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    // Indicator code in World Bank data (IndicatorValue.indicatorCode)
+    public String getWorldBankCode() {
+        return worldBankCode;
+    }
+
+    public Double getValue(Country country) {
+        return getter.apply(country);
+    }
+}
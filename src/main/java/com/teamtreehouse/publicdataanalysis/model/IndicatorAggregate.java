@@ -0,0 +1,117 @@
+package com.teamtreehouse.publicdataanalysis.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.math.BigDecimal;
+
+// running sums for one indicator column, or for a pair of columns over the countries that have both values;
+// sums of DECIMAL(11,8) values and their products are exact at scale 16, so removals never drift
+@Entity
+public class IndicatorAggregate {
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    @Column(nullable = false)
+    private long count;
+
+    @Column(nullable = false, precision = 38, scale = 16)
+    private BigDecimal sumFirst = BigDecimal.ZERO;
+
+    @Column(nullable = false, precision = 38, scale = 16)
+    private BigDecimal sumFirstSquares = BigDecimal.ZERO;
+
+    // The second value and product sums stay zero for single-indicator aggregates
+    @Column(nullable = false, precision = 38, scale = 16)
+    private BigDecimal sumSecond = BigDecimal.ZERO;
+
+    @Column(nullable = false, precision = 38, scale = 16)
+    private BigDecimal sumSecondSquares = BigDecimal.ZERO;
+
+    @Column(nullable = false, precision = 38, scale = 16)
+    private BigDecimal sumProducts = BigDecimal.ZERO;
+
+    // Default constructor for JPA
+    public IndicatorAggregate() {
+    }
+
+    public IndicatorAggregate(String name) {
+        this.name = name;
+    }
+
+    public void add(BigDecimal first, BigDecimal second) {
+        // Add one observation; second is null for single-indicator aggregates
+        count++;
+        sumFirst = sumFirst.add(first);
+        sumFirstSquares = sumFirstSquares.add(first.multiply(first));
+        if (second != null) {
+            sumSecond = sumSecond.add(second);
+            sumSecondSquares = sumSecondSquares.add(second.multiply(second));
+            sumProducts = sumProducts.add(first.multiply(second));
+        }
+    }
+
+    public void remove(BigDecimal first, BigDecimal second) {
+        // Remove one observation previously added with the same values
+        count--;
+        sumFirst = sumFirst.subtract(first);
+        sumFirstSquares = sumFirstSquares.subtract(first.multiply(first));
+        if (second != null) {
+            sumSecond = sumSecond.subtract(second);
+            sumSecondSquares = sumSecondSquares.subtract(second.multiply(second));
+            sumProducts = sumProducts.subtract(first.multiply(second));
+        }
+    }
+
+    public boolean hasSameSums(IndicatorAggregate other) {
+        // Exact comparison (BigDecimal.equals would also compare scales)
+        return count == other.count
+                && sumFirst.compareTo(other.sumFirst) == 0
+                && sumFirstSquares.compareTo(other.sumFirstSquares) == 0
+                && sumSecond.compareTo(other.sumSecond) == 0
+                && sumSecondSquares.compareTo(other.sumSecondSquares) == 0
+                && sumProducts.compareTo(other.sumProducts) == 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public BigDecimal getSumFirst() {
+        return sumFirst;
+    }
+
+    public BigDecimal getSumFirstSquares() {
+        return sumFirstSquares;
+    }
+
+    public BigDecimal getSumSecond() {
+        return sumSecond;
+    }
+
+    public BigDecimal getSumSecondSquares() {
+        return sumSecondSquares;
+    }
+
+    public BigDecimal getSumProducts() {
+        return sumProducts;
+    }
+
+    @Override
+    public String toString() {
+        return "IndicatorAggregate{" +
+                "name='" + name + '\'' +
+                ", count=" + count +
+                ", sumFirst=" + sumFirst +
+                ", sumFirstSquares=" + sumFirstSquares +
+                ", sumSecond=" + sumSecond +
+                ", sumSecondSquares=" + sumSecondSquares +
+                ", sumProducts=" + sumProducts +
+                '}';
+    }
+}
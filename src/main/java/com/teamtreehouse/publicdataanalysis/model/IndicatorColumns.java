@@ -0,0 +1,37 @@
+package com.teamtreehouse.publicdataanalysis.model;
+
+import java.util.BitSet;
+
+// read-only columnar view of the country table: codes, names, and one double column and validity bitmap per indicator
+public interface IndicatorColumns {
+    int getRowCount();
+
+    String getCode(int row);
+
+    String getName(int row);
+
+    boolean isPresent(Indicator indicator, int row);
+
+    // Only meaningful when isPresent(indicator, row)
+    double getValue(Indicator indicator, int row);
+
+    // A modifiable copy of the rows where the indicator has data
+    BitSet getValidity(Indicator indicator);
+
+    default BitSet getPairedValidity(Indicator indicatorA, Indicator indicatorB) {
+        // Rows where both indicators have data
+        BitSet paired = getValidity(indicatorA);
+        paired.and(getValidity(indicatorB));
+        return paired;
+    }
+
+    default double[] getValues(Indicator indicator, BitSet rows) {
+        // Copy the selected rows of a column into a dense array
+        double[] values = new double[rows.cardinality()];
+        int i = 0;
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            values[i++] = getValue(indicator, row);
+        }
+        return values;
+    }
+}
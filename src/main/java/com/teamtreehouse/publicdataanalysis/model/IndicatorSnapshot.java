@@ -0,0 +1,224 @@
+package com.teamtreehouse.publicdataanalysis.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// columnar binary snapshot of the country table, read in place from a memory-mapped file: opening maps the file
+// and checks the header, and every read goes straight to the mapped pages (no rows or columns on the heap).
+// Layout (little-endian, sections 8-byte aligned):
+//   header    magic "WBSNAP01", version, rowCount, indicatorCount, reserved, then the offsets of the sections below
+//   indicator property names, each a 2-byte length and UTF-8 bytes (checked against Indicator on open)
+//   codes     rowCount + 1 int offsets into the UTF-8 bytes that follow; names likewise
+//   columns   rowCount doubles per indicator, in Indicator order
+//   validity  ceil(rowCount / 64) longs per indicator (bit row % 64 of word row / 64)
+public class IndicatorSnapshot implements IndicatorColumns {
+    private static final byte[] MAGIC = "WBSNAP01".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    private final ByteBuffer buffer;
+    private final int rowCount;
+    private final int validityWords;
+    private final int codesOffset;
+    private final int namesOffset;
+    private final int columnsOffset;
+    private final int validityOffset;
+
+    private IndicatorSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || !Arrays.equals(readBytes(0, MAGIC.length), MAGIC)) {
+            throw new IOException("Not an indicator snapshot file");
+        }
+        if (buffer.getInt(8) != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + buffer.getInt(8));
+        }
+        this.rowCount = buffer.getInt(12);
+        this.validityWords = (rowCount + 63) / 64;
+        checkIndicators(buffer.getInt(16), (int) buffer.getLong(24));
+        this.codesOffset = (int) buffer.getLong(32);
+        this.namesOffset = (int) buffer.getLong(40);
+        this.columnsOffset = (int) buffer.getLong(48);
+        this.validityOffset = (int) buffer.getLong(56);
+        long expectedSize = validityOffset + (long) Indicator.values().length * validityWords * 8;
+        if (buffer.capacity() != expectedSize) {
+            throw new IOException("Truncated or corrupt snapshot file");
+        }
+    }
+
+    public static IndicatorSnapshot open(Path path) throws IOException {
+        // Map the whole file read-only; the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot files are limited to 2 GB");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new IndicatorSnapshot(buffer.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    public static long write(Path path, IndicatorColumns table) throws IOException {
+        // Write a snapshot of any columnar source to a temporary file, then move it over path; returns the size
+        Indicator[] indicators = Indicator.values();
+        int rowCount = table.getRowCount();
+        int validityWords = (rowCount + 63) / 64;
+        byte[][] propertyNames = new byte[indicators.length][];
+        long indicatorsSize = 0;
+        for (Indicator indicator : indicators) {
+            propertyNames[indicator.ordinal()] = indicator.getPropertyName().getBytes(StandardCharsets.UTF_8);
+            indicatorsSize += 2 + propertyNames[indicator.ordinal()].length;
+        }
+        byte[][] codes = new byte[rowCount][];
+        byte[][] names = new byte[rowCount][];
+        long codesSize = 0;
+        long namesSize = 0;
+        for (int row = 0; row < rowCount; row++) {
+            codes[row] = table.getCode(row).getBytes(StandardCharsets.UTF_8);
+            names[row] = table.getName(row).getBytes(StandardCharsets.UTF_8);
+            codesSize += codes[row].length;
+            namesSize += names[row].length;
+        }
+        long indicatorsOffset = HEADER_SIZE;
+        long codesOffset = align(indicatorsOffset + indicatorsSize);
+        long namesOffset = align(codesOffset + 4L * (rowCount + 1) + codesSize);
+        long columnsOffset = align(namesOffset + 4L * (rowCount + 1) + namesSize);
+        long validityOffset = columnsOffset + 8L * rowCount * indicators.length;
+        long size = validityOffset + 8L * validityWords * indicators.length;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot files are limited to 2 GB");
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put(MAGIC);
+            buffer.putInt(VERSION).putInt(rowCount).putInt(indicators.length).putInt(0);
+            buffer.putLong(indicatorsOffset).putLong(codesOffset).putLong(namesOffset)
+                    .putLong(columnsOffset).putLong(validityOffset);
+            for (byte[] propertyName : propertyNames) {
+                buffer.putShort((short) propertyName.length).put(propertyName);
+            }
+            writeStrings(buffer, (int) codesOffset, codes);
+            writeStrings(buffer, (int) namesOffset, names);
+            buffer.position((int) columnsOffset);
+            for (Indicator indicator : indicators) {
+                for (int row = 0; row < rowCount; row++) {
+                    buffer.putDouble(table.isPresent(indicator, row) ? table.getValue(indicator, row) : 0.0);
+                }
+            }
+            for (Indicator indicator : indicators) {
+                long[] words = table.getValidity(indicator).toLongArray();
+                for (int word = 0; word < validityWords; word++) {
+                    buffer.putLong(word < words.length ? words[word] : 0L);
+                }
+            }
+            ((MappedByteBuffer) buffer).force();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public String getCode(int row) {
+        return readString(codesOffset, row);
+    }
+
+    @Override
+    public String getName(int row) {
+        return readString(namesOffset, row);
+    }
+
+    @Override
+    public boolean isPresent(Indicator indicator, int row) {
+        checkRow(row);
+        long word = buffer.getLong(validityOffset + (indicator.ordinal() * validityWords + (row >>> 6)) * 8);
+        return (word & (1L << row)) != 0;
+    }
+
+    @Override
+    public double getValue(Indicator indicator, int row) {
+        checkRow(row);
+        return buffer.getDouble(columnsOffset + (indicator.ordinal() * rowCount + row) * 8);
+    }
+
+    @Override
+    public BitSet getValidity(Indicator indicator) {
+        // Copies only the bitmap (one bit per row); values stay in the mapped file
+        int offset = validityOffset + indicator.ordinal() * validityWords * 8;
+        long[] words = new long[validityWords];
+        for (int word = 0; word < validityWords; word++) {
+            words[word] = buffer.getLong(offset + word * 8);
+        }
+        return BitSet.valueOf(words);
+    }
+
+    private void checkIndicators(int indicatorCount, int offset) throws IOException {
+        // Columns are stored in Indicator order, so the file must list the same indicators
+        Indicator[] indicators = Indicator.values();
+        if (indicatorCount != indicators.length) {
+            throw new IOException("Snapshot has " + indicatorCount + " indicators, expected " + indicators.length);
+        }
+        for (Indicator indicator : indicators) {
+            byte[] propertyName = readBytes(offset + 2, buffer.getShort(offset));
+            offset += 2 + propertyName.length;
+            if (!new String(propertyName, StandardCharsets.UTF_8).equals(indicator.getPropertyName())) {
+                throw new IOException("Snapshot indicators do not match: expected " + indicator.getPropertyName());
+            }
+        }
+    }
+
+    private String readString(int offset, int row) {
+        checkRow(row);
+        int start = buffer.getInt(offset + row * 4);
+        int end = buffer.getInt(offset + (row + 1) * 4);
+        return new String(readBytes(offset + (rowCount + 1) * 4 + start, end - start), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readBytes(int offset, int length) {
+        // Absolute bulk read through a duplicate, so the shared buffer's position is never touched
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+    }
+
+    private static void writeStrings(ByteBuffer buffer, int offset, byte[][] strings) {
+        // Offsets table (one more than strings, so each length is the next offset minus this one), then the bytes
+        buffer.position(offset);
+        int position = 0;
+        buffer.putInt(position);
+        for (byte[] string : strings) {
+            position += string.length;
+            buffer.putInt(position);
+        }
+        for (byte[] string : strings) {
+            buffer.put(string);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+}
@@ -0,0 +1,169 @@
+package com.teamtreehouse.publicdataanalysis.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// read-optimized columnar copy of the country table: one double[] and validity bitmap per indicator
+public class IndicatorTable implements IndicatorColumns {
+    private final int rowCount;
+    private final Dictionary codes;
+    private final Dictionary names;
+    private final int[] codeIds;
+    private final int[] nameIds;
+    private final double[][] columns;
+    private final BitSet[] validity;
+
+    private IndicatorTable(int rowCount, Dictionary codes, Dictionary names, int[] codeIds, int[] nameIds,
+                           double[][] columns, BitSet[] validity) {
+        this.rowCount = rowCount;
+        this.codes = codes;
+        this.names = names;
+        this.codeIds = codeIds;
+        this.nameIds = nameIds;
+        this.columns = columns;
+        this.validity = validity;
+    }
+
+    public static IndicatorTable fromCountries(List<Country> countries) {
+        // Build columns from country rows, keeping row order
+        Indicator[] indicators = Indicator.values();
+        Builder builder = new Builder(countries.size());
+        Double[] values = new Double[indicators.length];
+        for (Country country : countries) {
+            for (Indicator indicator : indicators) {
+                values[indicator.ordinal()] = indicator.getValue(country);
+            }
+            builder.addRow(country.getCode(), country.getName(), values);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public String getCode(int row) {
+        return codes.decode(codeIds[row]);
+    }
+
+    @Override
+    public String getName(int row) {
+        return names.decode(nameIds[row]);
+    }
+
+    @Override
+    public boolean isPresent(Indicator indicator, int row) {
+        return validity[indicator.ordinal()].get(row);
+    }
+
+    @Override
+    public double getValue(Indicator indicator, int row) {
+        return columns[indicator.ordinal()][row];
+    }
+
+    @Override
+    public BitSet getValidity(Indicator indicator) {
+        return (BitSet) validity[indicator.ordinal()].clone();
+    }
+
+    @Override
+    public BitSet getPairedValidity(Indicator indicatorA, Indicator indicatorB) {
+        // Rows where both indicators have data
+        BitSet paired = getValidity(indicatorA);
+        paired.and(validity[indicatorB.ordinal()]);
+        return paired;
+    }
+
+    @Override
+    public double[] getValues(Indicator indicator, BitSet rows) {
+        // Copy the selected rows of a column into a dense array
+        double[] column = columns[indicator.ordinal()];
+        double[] values = new double[rows.cardinality()];
+        int i = 0;
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            values[i++] = column[row];
+        }
+        return values;
+    }
+
+    // appends rows one at a time, e.g. from a streamed projection, without any Country instances
+    public static class Builder {
+        private final Dictionary codes = new Dictionary();
+        private final Dictionary names = new Dictionary();
+        private int rowCount;
+        private int[] codeIds;
+        private int[] nameIds;
+        private final double[][] columns;
+        private final BitSet[] validity;
+
+        public Builder(int expectedRows) {
+            int capacity = Math.max(16, expectedRows);
+            Indicator[] indicators = Indicator.values();
+            codeIds = new int[capacity];
+            nameIds = new int[capacity];
+            columns = new double[indicators.length][capacity];
+            validity = new BitSet[indicators.length];
+            for (Indicator indicator : indicators) {
+                validity[indicator.ordinal()] = new BitSet(capacity);
+            }
+        }
+
+        public Builder addRow(String code, String name, Double[] values) {
+            // values by Indicator ordinal, null where the country has no data; name may be null when not needed
+            if (rowCount == codeIds.length) {
+                int capacity = rowCount * 2;
+                codeIds = Arrays.copyOf(codeIds, capacity);
+                nameIds = Arrays.copyOf(nameIds, capacity);
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = Arrays.copyOf(columns[i], capacity);
+                }
+            }
+            codeIds[rowCount] = codes.encode(code);
+            nameIds[rowCount] = names.encode(name);
+            for (int i = 0; i < columns.length; i++) {
+                if (values[i] != null) {
+                    columns[i][rowCount] = values[i];
+                    validity[i].set(rowCount);
+                }
+            }
+            rowCount++;
+            return this;
+        }
+
+        public IndicatorTable build() {
+            // Trim the arrays to the rows added; the builder must not be used afterwards
+            double[][] trimmed = new double[columns.length][];
+            for (int i = 0; i < columns.length; i++) {
+                trimmed[i] = columns[i].length == rowCount ? columns[i] : Arrays.copyOf(columns[i], rowCount);
+            }
+            return new IndicatorTable(rowCount, codes, names, Arrays.copyOf(codeIds, rowCount),
+                    Arrays.copyOf(nameIds, rowCount), trimmed, validity);
+        }
+    }
+
+    // string dictionary mapping each distinct value to a small integer id
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        private int encode(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        private String decode(int id) {
+            return values.get(id);
+        }
+    }
+}
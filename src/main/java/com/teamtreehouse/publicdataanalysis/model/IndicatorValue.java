@@ -0,0 +1,65 @@
+package com.teamtreehouse.publicdataanalysis.model;
+
+import javax.persistence.Column;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+// one observation of the World Bank panel: (countryCode, indicatorCode, year) -> value; missing data has no row
+@Entity
+// The primary key (countryCode, indicatorCode, year) serves per-country lookups and pairing joins;
+// this index serves "one indicator across countries for a year range"
+@Table(indexes = {
+        @Index(name = "idx_indicator_value_indicator_year", columnList = "indicatorCode, year, countryCode")
+})
+public class IndicatorValue {
+    @EmbeddedId
+    private IndicatorValueId id;
+
+    @Column(nullable = false)
+    private double value;
+
+    // Default constructor for JPA
+    public IndicatorValue() {
+    }
+
+    public IndicatorValue(String countryCode, String indicatorCode, int year, double value) {
+        this.id = new IndicatorValueId(countryCode, indicatorCode, year);
+        this.value = value;
+    }
+
+    public IndicatorValueId getId() {
+        return id;
+    }
+
+    public String getCountryCode() {
+        return id.getCountryCode();
+    }
+
+    public String getIndicatorCode() {
+        return id.getIndicatorCode();
+    }
+
+    public int getYear() {
+        return id.getYear();
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public void setValue(double value) {
+        this.value = value;
+    }
+
+    @Override
+    public String toString() {
+        return "IndicatorValue{" +
+                "countryCode='" + getCountryCode() + '\'' +
+                ", indicatorCode='" + getIndicatorCode() + '\'' +
+                ", year=" + getYear() +
+                ", value=" + value +
+                '}';
+    }
+}
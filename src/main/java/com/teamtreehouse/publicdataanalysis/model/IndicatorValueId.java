@@ -0,0 +1,69 @@
+package com.teamtreehouse.publicdataanalysis.model;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.io.Serializable;
+
+// composite key of an indicator value: (country, indicator, year)
+@Embeddable
+public class IndicatorValueId implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Column(length = 3)
+    private String countryCode;
+
+    @Column(length = 32)
+    private String indicatorCode;
+
+    @Column
+    private int year;
+
+    // Default constructor for JPA
+    public IndicatorValueId() {
+    }
+
+    public IndicatorValueId(String countryCode, String indicatorCode, int year) {
+        this.countryCode = countryCode;
+        this.indicatorCode = indicatorCode;
+        this.year = year;
+    }
+
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    public String getIndicatorCode() {
+        return indicatorCode;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IndicatorValueId)) {
+            return false;
+        }
+        IndicatorValueId other = (IndicatorValueId) o;
+        return year == other.year
+                && countryCode.equals(other.countryCode)
+                && indicatorCode.equals(other.indicatorCode);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = countryCode.hashCode();
+        result = 31 * result + indicatorCode.hashCode();
+        result = 31 * result + year;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return countryCode + "/" + indicatorCode + "/" + year;
+    }
+}
@@ -0,0 +1,554 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.CountryBuilder;
+import com.teamtreehouse.publicdataanalysis.model.Indicator;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorColumns;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorSnapshot;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorTable;
+import org.hibernate.SessionFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+// non-interactive subcommands writing CSV or JSON to stdout; reads use plain JDBC so only import bootstraps Hibernate
+public class BatchCommands {
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILURE = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_NOT_FOUND = 3;
+    public static final int EXIT_ROWS_REJECTED = 4;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: <command> [--format csv|json]",
+            "  stats [--where <filters>] [--snapshot <file>]  indicator statistics and correlation",
+            "  table [--snapshot <file>]  data table, values rounded to 2 decimals",
+            "  matrix [--snapshot <file>]  correlation of every indicator pair over the countries with both values",
+            "  query [--where <filters>] [--sort <column>] [--order asc|desc] [--limit N] [--snapshot <file>]",
+            "                          matching countries, e.g. --where \"adultLiteracyRate < 80\" --sort internetUsers",
+            "  search <text> [--limit 10]  countries by part of their code or name, typos tolerated",
+            "  get <code>              one country",
+            "  import <file> [--no-journal]  import countries (.txt/.csv) or a World Bank panel CSV",
+            "  export [countries|values]  full-precision dump of countries or indicator values",
+            "  snapshot <file>         write a memory-mapped columnar snapshot read by --snapshot",
+            "  journal [--from offset] [--file path]  country changes recorded by the menu and the HTTP server",
+            "  serve [--host 127.0.0.1] [--port 8080] [--threads 2x cores] [--no-journal]  HTTP API (runs until stopped)",
+            "  load <url> [--threads 16] [--seconds 10]  closed-loop GET load against a URL",
+            "  dbload [--clients 8] [--seconds 10] [--warmup 2] [--rows 1000] [--mix view=10,lookup=55,...]",
+            "         [--profiles embedded,tcp,...]  concurrent menu operations on a temporary database per profile",
+            "Exit codes: 0 ok, 1 failure, 2 usage error, 3 country not found, 4 import rejected rows");
+    // Options without a value
+    private static final List<String> FLAGS = Arrays.asList("--no-journal");
+    private static final String COUNTRY_COLUMNS = "code, name, internetUsers, adultLiteracyRate";
+
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        // Run one subcommand and return the process exit code
+        // Options are --name value or --name=value, anywhere on the command line; flags take no value
+        Map<String, String> options = new HashMap<>();
+        List<String> arguments = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (FLAGS.contains(args[i])) {
+                options.put(args[i].substring(2), "true");
+            } else if (args[i].startsWith("--") && args[i].contains("=")) {
+                options.put(args[i].substring(2, args[i].indexOf('=')), args[i].substring(args[i].indexOf('=') + 1));
+            } else if (args[i].startsWith("--") && !args[i].equals("--help") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                arguments.add(args[i]);
+            }
+        }
+        String format = options.getOrDefault("format", "csv");
+        if (arguments.isEmpty() || arguments.get(0).equals("help") || arguments.get(0).equals("--help")) {
+            (arguments.isEmpty() ? err : out).println(USAGE);
+            return arguments.isEmpty() ? EXIT_USAGE : EXIT_OK;
+        }
+        if (!format.equals("csv") && !format.equals("json")) {
+            err.println("Format must be csv or json");
+            return EXIT_USAGE;
+        }
+
+        String command = arguments.get(0);
+        List<String> operands = arguments.subList(1, arguments.size());
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        try {
+            switch (command) {
+                case "stats":
+                    return operands.isEmpty() ? stats(RecordWriter.forFormat(format, writer,
+                            IndicatorSummary.RECORD_COLUMNS), parseQuery(options), options.get("snapshot")) : usage(err);
+                case "table":
+                    return operands.isEmpty() ? table(RecordWriter.forFormat(format, writer,
+                            "code", "name", "internetUsers", "adultLiteracyRate"), options.get("snapshot")) : usage(err);
+                case "matrix":
+                    return operands.isEmpty() ? matrix(RecordWriter.forFormat(format, writer,
+                            "indicatorA", "indicatorB", "pairs", "covariance", "correlation"),
+                            options.get("snapshot")) : usage(err);
+                case "query":
+                    return operands.isEmpty() ? query(RecordWriter.forFormat(format, writer,
+                            "code", "name", "internetUsers", "adultLiteracyRate"), parseQuery(options),
+                            options.get("snapshot"), err) : usage(err);
+                case "search":
+                    return operands.size() == 1 ? search(RecordWriter.forFormat(format, writer,
+                            "code", "name", "match", "similarity"), operands.get(0),
+                            Integer.parseInt(options.getOrDefault("limit", "10"))) : usage(err);
+                case "get":
+                    return operands.size() == 1 ? get(RecordWriter.forFormat(format, writer,
+                            "code", "name", "internetUsers", "adultLiteracyRate"), operands.get(0), err) : usage(err);
+                case "import":
+                    return operands.size() == 1 ? importFile(RecordWriter.forFormat(format, writer,
+                            "file", "rowsRead", "inserted", "updated", "merged", "rejected", "seconds"),
+                            Paths.get(operands.get(0)), !options.containsKey("no-journal"), err) : usage(err);
+                case "export":
+                    if (operands.isEmpty() || (operands.size() == 1 && operands.get(0).equals("countries"))) {
+                        return exportCountries(RecordWriter.forFormat(format, writer,
+                                "code", "name", "internetUsers", "adultLiteracyRate"));
+                    } else if (operands.size() == 1 && operands.get(0).equals("values")) {
+                        return exportValues(RecordWriter.forFormat(format, writer,
+                                "countryCode", "indicatorCode", "year", "value"));
+                    }
+                    return usage(err);
+                case "snapshot":
+                    return operands.size() == 1 ? snapshot(RecordWriter.forFormat(format, writer,
+                            "file", "rows", "bytes", "seconds"), Paths.get(operands.get(0))) : usage(err);
+                case "journal":
+                    return operands.isEmpty() ? journal(RecordWriter.forFormat(format, writer,
+                            "sequence", "offset", "nextOffset", "time", "type", "code", "newCode", "name",
+                            "internetUsers", "adultLiteracyRate", "version"), options, err) : usage(err);
+                case "serve":
+                    return operands.isEmpty() ? serve(options, err) : usage(err);
+                case "load":
+                    return operands.size() == 1 ? load(RecordWriter.forFormat(format, writer,
+                            "url", "threads", "requests", "errors", "seconds", "requestsPerSecond",
+                            "p50Millis", "p99Millis", "maxMillis"), operands.get(0), options) : usage(err);
+                case "dbload":
+                    return operands.isEmpty() ? databaseLoad(RecordWriter.forFormat(format, writer,
+                            "profile", "clients", "operation", "count", "operationsPerSecond", "p50Millis",
+                            "p99Millis", "maxMillis", "lockErrors", "conflicts", "otherErrors"), options, err)
+                            : usage(err);
+                default:
+                    err.println("Unknown command: " + command);
+                    return usage(err);
+            }
+        } catch (Exception e) {
+            err.println("Error: " + e.getMessage());
+            return EXIT_FAILURE;
+        }
+    }
+
+    private static int usage(PrintStream err) {
+        err.println(USAGE);
+        return EXIT_USAGE;
+    }
+
+    private static int stats(RecordWriter records, CountryQuery query, String snapshot)
+            throws SQLException, IOException {
+        // One aggregate query, or one pass over a snapshot: a row per indicator, then the pair with its correlation;
+        // --where restricts both to the matching countries
+        IndicatorSummary summary;
+        if (snapshot != null) {
+            IndicatorSnapshot table = openSnapshot(snapshot);
+            summary = query.getFilters().isEmpty() ? IndicatorSummary.fromTable(table)
+                    : IndicatorSummary.fromTable(table, CountryQueryEngine.matchingRows(table, query.getFilters()));
+        } else {
+            try (Connection connection = Database.openConnection()) {
+                summary = query.getFilters().isEmpty() ? IndicatorSummary.fromDatabase(connection)
+                        : IndicatorSummary.fromDatabase(connection, query);
+            }
+        }
+        summary.writeRecords(records);
+        records.finish();
+        return EXIT_OK;
+    }
+
+    private static int table(RecordWriter records, String snapshot) throws SQLException, IOException {
+        // Same rows and rounding as the data table view
+        if (snapshot != null) {
+            IndicatorSnapshot table = openSnapshot(snapshot);
+            for (int row = 0; row < table.getRowCount(); row++) {
+                records.writeRecord(table.getCode(row), table.getName(row),
+                        rounded(table, Indicator.INTERNET_USERS, row), rounded(table, Indicator.ADULT_LITERACY_RATE, row));
+            }
+            records.finish();
+            return EXIT_OK;
+        }
+        try (Connection connection = Database.openConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT " + COUNTRY_COLUMNS + " FROM Country ORDER BY code");
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                records.writeRecord(resultSet.getString(1), resultSet.getString(2),
+                        rounded(resultSet.getBigDecimal(3)), rounded(resultSet.getBigDecimal(4)));
+            }
+        }
+        records.finish();
+        return EXIT_OK;
+    }
+
+    private static int matrix(RecordWriter records, String snapshot) throws SQLException, IOException {
+        // Every indicator pair, from a snapshot or a columnar copy of the table; indicators come from the Indicator
+        // enum here, since reading the Hibernate mapping would mean bootstrapping it
+        IndicatorColumns table = snapshot != null ? openSnapshot(snapshot) : IndicatorTable.fromCountries(readCountries());
+        List<Indicator> indicators = Arrays.asList(Indicator.values());
+        CorrelationMatrix matrix = CorrelationMatrix.compute(table, indicators);
+        for (int a = 0; a < indicators.size(); a++) {
+            for (int b = a + 1; b < indicators.size(); b++) {
+                PairedStats pair = matrix.get(indicators.get(a), indicators.get(b));
+                records.writeRecord(indicators.get(a).getPropertyName(), indicators.get(b).getPropertyName(),
+                        pair.getCount(), pair.getCovariance(), pair.getCorrelation());
+            }
+        }
+        records.finish();
+        return EXIT_OK;
+    }
+
+    private static int query(RecordWriter records, CountryQuery query, String snapshot, PrintStream err)
+            throws SQLException, IOException {
+        // Pushed down to H2, or run over a snapshot in memory; the match count goes to stderr
+        CountryQueryResult result;
+        if (snapshot != null) {
+            result = CountryQueryEngine.execute(openSnapshot(snapshot), query);
+        } else {
+            try (Connection connection = Database.openConnection()) {
+                result = CountryQueryEngine.execute(connection, query);
+            }
+        }
+        for (Country country : result.getRows()) {
+            records.writeRecord(country.getCode(), country.getName(),
+                    country.getInternetUsers(), country.getAdultLiteracyRate());
+        }
+        records.finish();
+        err.printf("%d of %d matching countries (%s, %.1f ms)%n", result.getRows().size(), result.getMatchCount(),
+                result.getPlan().name().toLowerCase(), result.getElapsedNanos() / 1e6);
+        return EXIT_OK;
+    }
+
+    private static int search(RecordWriter records, String text, int limit) throws SQLException, IOException {
+        // Index the codes and names for this one search; the menu keeps its index across searches and writes
+        if (limit < 1) {
+            // Checked before reading the table, with the message CountrySearchIndex.search would give
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        CountrySearchIndex index = new CountrySearchIndex();
+        try (Connection connection = Database.openConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT code, name FROM Country");
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                index.add(resultSet.getString(1), resultSet.getString(2));
+            }
+        }
+        for (CountryMatch match : index.search(text, limit)) {
+            records.writeRecord(match.getCode(), match.getName(), match.getKind().name().toLowerCase(),
+                    match.getSimilarity());
+        }
+        records.finish();
+        return EXIT_OK;
+    }
+
+    private static CountryQuery parseQuery(Map<String, String> options) {
+        // --where "a < 1, b >= 2" --sort <property name> --order asc|desc --limit N
+        CountryQuery query = new CountryQuery();
+        IndicatorFilter.parseAll(options.getOrDefault("where", "")).forEach(query::where);
+        String order = options.getOrDefault("order", "asc");
+        if (!order.equals("asc") && !order.equals("desc")) {
+            throw new IllegalArgumentException("Order must be asc or desc");
+        }
+        String sort = options.getOrDefault("sort", "code");
+        CountryPager.SortColumn sortColumn = null;
+        for (CountryPager.SortColumn candidate : CountryPager.SortColumn.values()) {
+            if (candidate.getPropertyName().equalsIgnoreCase(sort)) {
+                sortColumn = candidate;
+            }
+        }
+        if (sortColumn == null) {
+            throw new IllegalArgumentException("Sort column must be one of code, name, internetUsers or adultLiteracyRate");
+        }
+        query.orderBy(sortColumn, order.equals("desc"));
+        if (options.containsKey("limit")) {
+            query.limit(Integer.parseInt(options.get("limit")));
+        }
+        return query;
+    }
+
+    private static int get(RecordWriter records, String code, PrintStream err) throws SQLException, IOException {
+        // One country by primary key
+        try (Connection connection = Database.openConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT " + COUNTRY_COLUMNS + " FROM Country WHERE code = ?")) {
+            statement.setString(1, code);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    err.println("Country not found: " + code);
+                    return EXIT_NOT_FOUND;
+                }
+                records.writeRecord(resultSet.getString(1), resultSet.getString(2),
+                        plain(resultSet.getBigDecimal(3)), plain(resultSet.getBigDecimal(4)));
+            }
+        }
+        records.finish();
+        return EXIT_OK;
+    }
+
+    private static int exportCountries(RecordWriter records) throws SQLException, IOException {
+        // Full-precision dump; the CSV form can be imported again
+        try (Connection connection = Database.openConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT " + COUNTRY_COLUMNS + " FROM Country ORDER BY code");
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                records.writeRecord(resultSet.getString(1), resultSet.getString(2),
+                        plain(resultSet.getBigDecimal(3)), plain(resultSet.getBigDecimal(4)));
+            }
+        }
+        records.finish();
+        return EXIT_OK;
+    }
+
+    private static int exportValues(RecordWriter records) throws SQLException, IOException {
+        // Indicator values in long format, streamed in primary key order
+        try (Connection connection = Database.openConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT countryCode, indicatorCode, year, value FROM IndicatorValue"
+                             + " ORDER BY countryCode, indicatorCode, year");
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                records.writeRecord(resultSet.getString(1), resultSet.getString(2),
+                        resultSet.getInt(3), resultSet.getDouble(4));
+            }
+        }
+        records.finish();
+        return EXIT_OK;
+    }
+
+    private static int snapshot(RecordWriter records, Path path) throws SQLException, IOException {
+        // Read the country table over JDBC in code order and write it as a columnar snapshot
+        long start = System.nanoTime();
+        List<Country> countries = readCountries();
+        long bytes = IndicatorSnapshot.write(path, IndicatorTable.fromCountries(countries));
+        records.writeRecord(path.toString(), countries.size(), bytes, (System.nanoTime() - start) / 1e9);
+        records.finish();
+        return EXIT_OK;
+    }
+
+    private static List<Country> readCountries() throws SQLException {
+        // The country table over JDBC, in code order
+        List<Country> countries = new ArrayList<>();
+        try (Connection connection = Database.openConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT " + COUNTRY_COLUMNS + " FROM Country ORDER BY code");
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                countries.add(new CountryBuilder(resultSet.getString(1), resultSet.getString(2))
+                        .withInternetUsers(asDouble(resultSet.getBigDecimal(3)))
+                        .withAdultLiteracyRate(asDouble(resultSet.getBigDecimal(4)))
+                        .build());
+            }
+        }
+        return countries;
+    }
+
+    private static int importFile(RecordWriter records, Path path, boolean journaled, PrintStream err)
+            throws IOException {
+        // Imports go through Hibernate (schema update, batching), so this is the one command that bootstraps it
+        if (!Files.isRegularFile(path)) {
+            err.println("File not found: " + path);
+            return EXIT_FAILURE;
+        }
+        // Country imports open the journal before anything else, so a journal that cannot be opened (e.g. held by
+        // another process) fails the command before any row changes; --no-journal imports without it
+        boolean panel = IndicatorValueImporter.isPanelFile(path);
+        ChangeJournal journal = panel || !journaled ? null : ChangeJournal.openDefault();
+        ImportResult result;
+        try {
+            SessionFactory sessionFactory = Database.getSessionFactory();
+            try {
+                if (panel) {
+                    result = new IndicatorValueImporter(sessionFactory).importFile(path);
+                } else {
+                    result = new CountryImporter(sessionFactory).importFile(path);
+                    // Writes bypassed the running aggregates, so rebuild them now rather than in the next session
+                    new IndicatorAggregates(sessionFactory).rebuild();
+                    // and tell journal consumers to rebuild from the table
+                    if (journal != null) {
+                        journal.append(JournalRecord.Type.RESET, null, null);
+                    }
+                }
+            } finally {
+                sessionFactory.close();
+            }
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+        }
+        records.writeRecord(path.toString(), result.getRowsRead(), result.getInserted(), result.getUpdated(),
+                result.getMerged(), result.getRejected(), result.getElapsedNanos() / 1e9);
+        records.finish();
+        result.getErrors().forEach(err::println);
+        return result.getRejected() == 0 ? EXIT_OK : EXIT_ROWS_REJECTED;
+    }
+
+    private static int journal(RecordWriter records, Map<String, String> options, PrintStream err)
+            throws IOException {
+        // Replay the journal (read-only, so it works while the menu or server is appending) from an offset
+        // printed by an earlier run; the offset to continue from goes to stderr
+        Path path = options.containsKey("file") ? Paths.get(options.get("file")) : ChangeJournal.getDefaultPath();
+        if (!Files.isRegularFile(path)) {
+            err.println("File not found: " + path);
+            return EXIT_FAILURE;
+        }
+        long nextOffset = ChangeJournal.replay(path, Long.parseLong(options.getOrDefault("from", "0")), record -> {
+            Country country = record.getCountry();
+            try {
+                records.writeRecord(record.getSequence(), record.getOffset(), record.getNextOffset(),
+                        Instant.ofEpochMilli(record.getTimestampMillis()).toString(),
+                        record.getType().name().toLowerCase(), record.getCode(),
+                        country == null ? null : country.getCode(), country == null ? null : country.getName(),
+                        country == null ? null : country.getInternetUsers(),
+                        country == null ? null : country.getAdultLiteracyRate(),
+                        country == null ? null : country.getVersion());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        records.finish();
+        err.println("Next offset: " + nextOffset);
+        return EXIT_OK;
+    }
+
+    private static int serve(Map<String, String> options, PrintStream err) throws IOException, InterruptedException {
+        // Serve the HTTP API until the process is stopped
+        String host = options.getOrDefault("host", "127.0.0.1");
+        int port = Integer.parseInt(options.getOrDefault("port", "8080"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                Integer.toString(2 * Runtime.getRuntime().availableProcessors())));
+        // The journal first: a journal held by another process stops the server before it bootstraps Hibernate
+        ChangeJournal journal = options.containsKey("no-journal") ? null : ChangeJournal.openDefault();
+        SessionFactory sessionFactory = Database.getSessionFactory();
+        CountryRepository countryRepository = new CountryRepository(sessionFactory, journal);
+        CountryService countryService = new CountryService(countryRepository);
+        Metrics.register(new DatabaseStatistics(sessionFactory, countryRepository));
+        // Load the country cache and aggregates before taking traffic
+        countryService.findAll();
+        countryService.getSummary();
+        HttpApiServer server = new HttpApiServer(countryService, new InetSocketAddress(host, port), threads);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            sessionFactory.close();
+            stopped.countDown();
+        }));
+        server.start();
+        err.printf("Listening on http://%s:%d/ with %d worker threads%n", host, server.getAddress().getPort(), threads);
+        stopped.await();
+        return EXIT_OK;
+    }
+
+    private static int load(RecordWriter records, String url, Map<String, String> options)
+            throws IOException, InterruptedException {
+        // Measure throughput and latency of GET requests against a running server
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        double seconds = Double.parseDouble(options.getOrDefault("seconds", "10"));
+        LoadGenerator.Result result = new LoadGenerator(new URL(url), threads, seconds).run();
+        records.writeRecord(url, threads, result.getRequests(), result.getErrors(), result.getSeconds(),
+                result.getRequestsPerSecond(), result.getLatencyMillis(50), result.getLatencyMillis(99),
+                result.getLatencyMillis(100));
+        records.finish();
+        return result.getErrors() == 0 ? EXIT_OK : EXIT_FAILURE;
+    }
+
+    private static int databaseLoad(RecordWriter records, Map<String, String> options, PrintStream err)
+            throws IOException, InterruptedException {
+        // Run the same concurrent workload once per storage profile, one record per operation and one for all
+        int clients = Integer.parseInt(options.getOrDefault("clients", "8"));
+        double seconds = Double.parseDouble(options.getOrDefault("seconds", "10"));
+        double warmup = Double.parseDouble(options.getOrDefault("warmup", "2"));
+        int rows = Integer.parseInt(options.getOrDefault("rows", "1000"));
+        Map<PersistenceLoadTest.Operation, Integer> mix = options.containsKey("mix")
+                ? PersistenceLoadTest.parseMix(options.get("mix")) : PersistenceLoadTest.defaultMix();
+        List<StorageProfile> profiles = new ArrayList<>();
+        for (String spec : options.getOrDefault("profiles", "embedded").split(",")) {
+            profiles.add(StorageProfile.parse(spec));
+        }
+        List<PersistenceLoadTest.Result> results = new PersistenceLoadTest(clients, seconds, warmup, rows, mix)
+                .run(profiles);
+        long otherErrors = 0;
+        for (PersistenceLoadTest.Result result : results) {
+            for (PersistenceLoadTest.Operation operation : PersistenceLoadTest.Operation.values()) {
+                if (result.getLatencies(operation).getCount() > 0) {
+                    writeLoadRecord(records, result, operation, operation.getName());
+                }
+            }
+            writeLoadRecord(records, result, null, "all");
+            otherErrors += result.getOtherErrors(null);
+            if (result.getLastError() != null) {
+                err.println(result.getProfile() + ": " + result.getOtherErrors(null) + " unexpected errors, last: "
+                        + result.getLastError());
+            }
+        }
+        records.finish();
+        return otherErrors == 0 ? EXIT_OK : EXIT_FAILURE;
+    }
+
+    private static void writeLoadRecord(RecordWriter records, PersistenceLoadTest.Result result,
+                                        PersistenceLoadTest.Operation operation, String name) throws IOException {
+        LatencyHistogram latencies = result.getLatencies(operation);
+        records.writeRecord(result.getProfile(), result.getClients(), name, latencies.getCount(),
+                result.getOperationsPerSecond(operation), latencies.getP50Millis(), latencies.getP99Millis(),
+                latencies.getMaxMillis(), result.getLockErrors(operation), result.getConflicts(operation),
+                result.getOtherErrors(operation));
+    }
+
+    private static BigDecimal rounded(BigDecimal value) {
+        // Round to the data table view's 2 decimals (a display string would use the locale's decimal separator)
+        return value == null ? null : value.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static IndicatorSnapshot openSnapshot(String snapshot) throws IOException {
+        Path path = Paths.get(snapshot);
+        if (!Files.isRegularFile(path)) {
+            throw new IOException("File not found: " + path);
+        }
+        return IndicatorSnapshot.open(path);
+    }
+
+    private static BigDecimal rounded(IndicatorSnapshot table, Indicator indicator, int row) {
+        // Round a snapshot cell like the data table view
+        return table.isPresent(indicator, row)
+                ? BigDecimal.valueOf(table.getValue(indicator, row)).setScale(2, RoundingMode.HALF_UP) : null;
+    }
+
+    private static Double asDouble(BigDecimal value) {
+        return value == null ? null : value.doubleValue();
+    }
+
+    private static BigDecimal plain(BigDecimal value) {
+        // Drop the trailing zeros of DECIMAL(11,8) (12.50000000 -> 12.5, 100.00000000 -> 100)
+        if (value == null) {
+            return null;
+        }
+        BigDecimal stripped = value.stripTrailingZeros();
+        return stripped.scale() < 0 ? stripped.setScale(0) : stripped;
+    }
+}
@@ -0,0 +1,124 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// bootstrap percentile confidence intervals for correlation coefficients, resampled on a fork-join pool;
+// the task tree and the SplittableRandom stream of each leaf depend only on the seed and the number of
+// resamples, so results are identical for any pool size
+public class BootstrapCorrelation {
+    // Resamples per leaf task: enough work to amortize forking, small enough to balance across cores
+    private static final int RESAMPLES_PER_TASK = 16;
+
+    private final ForkJoinPool pool;
+    private final int resamples;
+    private final double confidence;
+    private final long seed;
+
+    public BootstrapCorrelation(int resamples, double confidence, long seed) {
+        this(ForkJoinPool.commonPool(), resamples, confidence, seed);
+    }
+
+    public BootstrapCorrelation(ForkJoinPool pool, int resamples, double confidence, long seed) {
+        if (resamples < 1) {
+            throw new IllegalArgumentException("Number of resamples must be positive");
+        }
+        if (!(confidence > 0.0 && confidence < 1.0)) {
+            throw new IllegalArgumentException("Confidence level must be between 0 and 1");
+        }
+        this.pool = pool;
+        this.resamples = resamples;
+        this.confidence = confidence;
+        this.seed = seed;
+    }
+
+    public CorrelationInterval estimate(CorrelationMethod method, double[] indicatorA, double[] indicatorB) {
+        // Coefficient of the sample, and the percentile interval of the coefficients of resampled pairs
+        if (indicatorA.length != indicatorB.length) {
+            throw new IllegalArgumentException("Paired indicators must have the same number of values");
+        }
+        double estimate = method.correlate(indicatorA, indicatorB);
+        double[] coefficients = new double[resamples];
+        if (indicatorA.length > 0) {
+            pool.invoke(new ResampleTask(method, indicatorA, indicatorB, coefficients, 0, resamples,
+                    new SplittableRandom(seed)));
+        } else {
+            Arrays.fill(coefficients, Double.NaN);
+        }
+        // Drop undefined coefficients (constant resamples), then read the tails
+        Arrays.sort(coefficients);
+        int valid = coefficients.length;
+        while (valid > 0 && Double.isNaN(coefficients[valid - 1])) {
+            valid--;
+        }
+        double tail = (1.0 - confidence) / 2;
+        return new CorrelationInterval(method, indicatorA.length, estimate,
+                percentile(coefficients, valid, tail), percentile(coefficients, valid, 1.0 - tail),
+                confidence, resamples, valid);
+    }
+
+    private static double percentile(double[] sorted, int length, double fraction) {
+        // Linear interpolation between the closest ranks; NaN when empty
+        if (length == 0) {
+            return Double.NaN;
+        }
+        double position = fraction * (length - 1);
+        int index = (int) Math.floor(position);
+        if (index + 1 >= length) {
+            return sorted[length - 1];
+        }
+        return sorted[index] + (position - index) * (sorted[index + 1] - sorted[index]);
+    }
+
+    // computes the coefficients of resamples [from, to); splits in halves until a leaf holds RESAMPLES_PER_TASK
+    private static class ResampleTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CorrelationMethod method;
+        private final double[] indicatorA;
+        private final double[] indicatorB;
+        private final double[] coefficients;
+        private final int from;
+        private final int to;
+        private final SplittableRandom random;
+
+        private ResampleTask(CorrelationMethod method, double[] indicatorA, double[] indicatorB,
+                             double[] coefficients, int from, int to, SplittableRandom random) {
+            this.method = method;
+            this.indicatorA = indicatorA;
+            this.indicatorB = indicatorB;
+            this.coefficients = coefficients;
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > RESAMPLES_PER_TASK) {
+                // Split the stream before forking so each half's randomness is fixed by its position in the tree
+                int mid = (from + to) >>> 1;
+                ResampleTask left = new ResampleTask(method, indicatorA, indicatorB, coefficients, from, mid,
+                        random.split());
+                ResampleTask right = new ResampleTask(method, indicatorA, indicatorB, coefficients, mid, to,
+                        random);
+                invokeAll(left, right);
+                return;
+            }
+            // Draw pairs with replacement into buffers reused across this leaf's resamples
+            int n = indicatorA.length;
+            double[] resampleA = new double[n];
+            double[] resampleB = new double[n];
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < n; j++) {
+                    int row = random.nextInt(n);
+                    resampleA[j] = indicatorA[row];
+                    resampleB[j] = indicatorB[row];
+                }
+                coefficients[i] = method.correlate(resampleA, resampleB);
+            }
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.CountryBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// append-only binary log of committed country changes, numbered by sequence, for audit and for derived state
+// (caches, indexes, aggregates) to catch up from a known offset instead of rescanning the table. Appends go to a
+// buffer that a daemon thread writes and fsyncs every journal.syncMillis (default 100), so concurrent writes share
+// one fsync; a crash can lose that window of records (never database rows). journal.syncMillis=0 syncs every append.
+// Layout (big-endian, as written by DataOutputStream):
+//   header    magic "WBJRNL01", version, reserved (16 bytes)
+//   records   body length, CRC32 of the body, then the body: sequence, timestamp millis, type ordinal, code, and
+//             for ADD and UPDATE the country (code, name, version, internet users, adult literacy rate)
+//   nullable values are a presence byte followed by the value; strings are modified UTF-8 with a 2-byte length
+// Opening truncates a torn last record (crash mid-write), found by its length or checksum
+public class ChangeJournal implements Closeable {
+    private static final byte[] MAGIC = "WBJRNL01".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    // Buffered records are also written (not synced) once they fill this much
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String DEFAULT_PATH = "data/worldbank.journal";
+
+    private final Path path;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final ScheduledExecutorService syncer;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long writtenOffset;
+    private long syncedOffset;
+    private long lastSequence;
+    // A failed background sync, rethrown by the next append
+    private IOException failure;
+
+    private ChangeJournal(Path path, long syncMillis) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            FileLock held;
+            try {
+                held = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // Already held by another channel of this process
+                held = null;
+            }
+            if (held == null) {
+                throw new JournalLockedException(path);
+            }
+            this.lock = held;
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).putInt(VERSION);
+                header.clear();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+            }
+            checkHeader(channel, path);
+            long end = scan(channel, HEADER_SIZE, channel.size(), record -> lastSequence = record.getSequence());
+            if (end < channel.size()) {
+                channel.truncate(end);
+                channel.force(true);
+            }
+            writtenOffset = end;
+            syncedOffset = end;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (syncMillis > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "change-journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::syncInBackground, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    public static ChangeJournal open(Path path, long syncMillis) throws IOException {
+        // Open (or create) a journal for appending; only one process at a time can hold it
+        return new ChangeJournal(path, syncMillis);
+    }
+
+    public static ChangeJournal openDefault() {
+        // The journal next to the database (-Djournal.file, "none" to turn it off), closed and synced at exit.
+        // Fails while another process holds it: writing without it would leave gaps in the audit trail
+        if (System.getProperty("journal.file", "").equals("none")) {
+            return null;
+        }
+        try {
+            ChangeJournal journal = open(getDefaultPath(), Long.getLong("journal.syncMillis", 100));
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::closeQuietly, "change-journal-close"));
+            return journal;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
+    }
+
+    public static Path getDefaultPath() {
+        return Paths.get(System.getProperty("journal.file", DEFAULT_PATH));
+    }
+
+    public static long replay(Path path, long fromOffset, Consumer<JournalRecord> consumer) throws IOException {
+        // Read a journal without opening it for appends (e.g. while another process holds it): records up to the
+        // last complete one; returns the offset to resume from
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            checkHeader(channel, path);
+            return scan(channel, Math.max(fromOffset, HEADER_SIZE), channel.size(), consumer);
+        }
+    }
+
+    public long append(JournalRecord.Type type, String code, Country country) {
+        // Buffer one committed change and return its sequence number; it is durable once the next sync completes
+        long start = Metrics.start();
+        long sequence;
+        synchronized (this) {
+            if (failure != null) {
+                throw new UncheckedIOException("Change journal sync failed", failure);
+            }
+            sequence = lastSequence + 1;
+            byte[] body = encode(sequence, System.currentTimeMillis(), type, code, country);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            try {
+                if (buffer.remaining() < RECORD_HEADER_SIZE + body.length) {
+                    writeBuffered();
+                    if (buffer.capacity() < RECORD_HEADER_SIZE + body.length) {
+                        buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+                    }
+                }
+                buffer.putInt(body.length).putInt((int) crc.getValue()).put(body);
+                lastSequence = sequence;
+                if (syncer == null) {
+                    sync();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        Metrics.record("journal.append", start);
+        return sequence;
+    }
+
+    public synchronized long replay(long fromOffset, Consumer<JournalRecord> consumer) throws IOException {
+        // Pass the records from fromOffset (0 for the first) to the consumer in sequence order, including ones not
+        // synced yet; returns the offset to pass next time. Appends wait until the consumer returns
+        writeBuffered();
+        return scan(channel, Math.max(fromOffset, HEADER_SIZE), writtenOffset, consumer);
+    }
+
+    public void sync() throws IOException {
+        // Write the buffered records and fsync them; appends are not blocked while the fsync runs
+        long target;
+        synchronized (this) {
+            writeBuffered();
+            target = writtenOffset;
+            if (syncedOffset >= target) {
+                return;
+            }
+        }
+        long start = Metrics.start();
+        channel.force(false);
+        Metrics.record("journal.sync", start);
+        synchronized (this) {
+            syncedOffset = Math.max(syncedOffset, target);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    // Offset after the last appended record, synced or not
+    public synchronized long getEndOffset() {
+        return writtenOffset + buffer.position();
+    }
+
+    // Offset up to which records are on disk
+    public synchronized long getSyncedOffset() {
+        return syncedOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Stop the sync thread, sync what is left and release the file
+        if (syncer != null) {
+            syncer.shutdown();
+            try {
+                syncer.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                sync();
+            } finally {
+                lock.release();
+                channel.close();
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            System.err.println("Could not close the change journal: " + e.getMessage());
+        }
+    }
+
+    private void syncInBackground() {
+        try {
+            sync();
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+            }
+        }
+    }
+
+    private void writeBuffered() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            writtenOffset += channel.write(buffer, writtenOffset);
+        }
+        buffer.clear();
+    }
+
+    private static void checkHeader(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read until full or end of file
+        }
+        byte[] magic = Arrays.copyOf(header.array(), MAGIC.length);
+        if (header.hasRemaining() || !Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a change journal: " + path);
+        }
+        if (header.getInt(MAGIC.length) != VERSION) {
+            throw new IOException("Unsupported change journal version: " + header.getInt(MAGIC.length));
+        }
+    }
+
+    private static long scan(FileChannel channel, long offset, long end, Consumer<JournalRecord> consumer)
+            throws IOException {
+        // Decode the records in [offset, end) through one read buffer; stops at the first incomplete or corrupt
+        // record and returns where it starts (end when every record is intact)
+        Reader reader = new Reader(channel, end);
+        while (true) {
+            ByteBuffer header = reader.read(offset, RECORD_HEADER_SIZE);
+            if (header == null) {
+                return offset;
+            }
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || offset + RECORD_HEADER_SIZE + length > end) {
+                return offset;
+            }
+            ByteBuffer body = reader.read(offset + RECORD_HEADER_SIZE, length);
+            byte[] bytes = new byte[length];
+            body.get(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if ((int) crc.getValue() != checksum) {
+                return offset;
+            }
+            long nextOffset = offset + RECORD_HEADER_SIZE + length;
+            consumer.accept(decode(bytes, offset, nextOffset));
+            offset = nextOffset;
+        }
+    }
+
+    private static byte[] encode(long sequence, long timestampMillis, JournalRecord.Type type, String code,
+                                 Country country) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(sequence);
+            out.writeLong(timestampMillis);
+            out.writeByte(type.ordinal());
+            writeString(out, code);
+            out.writeBoolean(country != null);
+            if (country != null) {
+                out.writeUTF(country.getCode());
+                writeString(out, country.getName());
+                out.writeLong(country.getVersion() == null ? -1 : country.getVersion());
+                writeDouble(out, country.getInternetUsers());
+                writeDouble(out, country.getAdultLiteracyRate());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static JournalRecord decode(byte[] body, long offset, long nextOffset) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        long sequence = in.readLong();
+        long timestampMillis = in.readLong();
+        JournalRecord.Type type = JournalRecord.Type.values()[in.readByte()];
+        String code = readString(in);
+        Country country = null;
+        if (in.readBoolean()) {
+            String countryCode = in.readUTF();
+            String name = readString(in);
+            long version = in.readLong();
+            country = new CountryBuilder(countryCode, name)
+                    .withInternetUsers(readDouble(in))
+                    .withAdultLiteracyRate(readDouble(in))
+                    .build();
+            country.setVersion(version < 0 ? null : version);
+        }
+        return new JournalRecord(sequence, timestampMillis, type, code, country, offset, nextOffset);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    // sequential reads through a reusable buffer, so replay makes one read call per buffer rather than per record
+    private static class Reader {
+        private final FileChannel channel;
+        private final long end;
+        private ByteBuffer chunk = ByteBuffer.allocate(BUFFER_SIZE);
+        private long chunkStart;
+
+        private Reader(FileChannel channel, long end) {
+            this.channel = channel;
+            this.end = end;
+            chunk.limit(0);
+        }
+
+        private ByteBuffer read(long position, int length) throws IOException {
+            // length bytes at position, or null when the range ends past the end
+            if (position + length > end) {
+                return null;
+            }
+            if (position < chunkStart || position + length > chunkStart + chunk.limit()) {
+                if (chunk.capacity() < length) {
+                    chunk = ByteBuffer.allocate(length);
+                }
+                chunk.clear();
+                chunk.limit((int) Math.min(chunk.capacity(), end - position));
+                while (chunk.hasRemaining() && channel.read(chunk, position + chunk.position()) >= 0) {
+                    // read until full or end of file
+                }
+                chunk.flip();
+                chunkStart = position;
+                if (chunk.limit() < length) {
+                    return null;
+                }
+            }
+            ByteBuffer view = chunk.duplicate();
+            view.position((int) (position - chunkStart));
+            view.limit(view.position() + length);
+            return view.slice();
+        }
+    }
+
+    // thrown by open() when another process (or another open journal in this one) holds the file
+    public static class JournalLockedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private JournalLockedException(Path path) {
+            super("Change journal is in use by another process: " + path
+                    + " (stop it, or turn journaling off with -Djournal.file=none or --no-journal)");
+        }
+    }
+}
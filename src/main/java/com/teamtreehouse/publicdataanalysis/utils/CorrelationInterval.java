@@ -0,0 +1,75 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+// immutable correlation coefficient with a bootstrap percentile confidence interval
+public class CorrelationInterval {
+    private final CorrelationMethod method;
+    private final int count;
+    private final double estimate;
+    private final double lower;
+    private final double upper;
+    private final double confidence;
+    private final int resamples;
+    private final int validResamples;
+
+    public CorrelationInterval(CorrelationMethod method, int count, double estimate, double lower, double upper,
+                               double confidence, int resamples, int validResamples) {
+        this.method = method;
+        this.count = count;
+        this.estimate = estimate;
+        this.lower = lower;
+        this.upper = upper;
+        this.confidence = confidence;
+        this.resamples = resamples;
+        this.validResamples = validResamples;
+    }
+
+    public CorrelationMethod getMethod() {
+        return method;
+    }
+
+    // Number of pairs in the sample
+    public int getCount() {
+        return count;
+    }
+
+    // Coefficient of the original sample
+    public double getEstimate() {
+        return estimate;
+    }
+
+    // Interval bounds are NaN when no resample had a defined coefficient
+    public double getLower() {
+        return lower;
+    }
+
+    public double getUpper() {
+        return upper;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public int getResamples() {
+        return resamples;
+    }
+
+    // Resamples with a defined coefficient (a resample of constant values has none)
+    public int getValidResamples() {
+        return validResamples;
+    }
+
+    @Override
+    public String toString() {
+        return "CorrelationInterval{" +
+                "method=" + method +
+                ", count=" + count +
+                ", estimate=" + estimate +
+                ", lower=" + lower +
+                ", upper=" + upper +
+                ", confidence=" + confidence +
+                ", resamples=" + resamples +
+                ", validResamples=" + validResamples +
+                '}';
+    }
+}
@@ -0,0 +1,257 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.Indicator;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorColumns;
+import org.hibernate.SessionFactory;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.type.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Pearson correlation of every pair of indicator columns, each pair over its own pairwise-complete rows (both
+// values present). The rows are cut into blocks of BLOCK_ROWS computed on a fork-join pool: a block's columns stay in
+// cache while every pair runs a two-pass kernel over them (sums, then deviations from the block means), and blocks
+// merge with Chan's update in a fixed tree, so results are identical for any pool size
+public class CorrelationMatrix {
+    // Each column's block of values and weights (64 KB) stays in L2 while all of its pairs run
+    private static final int BLOCK_ROWS = 4096;
+
+    private final List<Indicator> indicators;
+    // Upper triangle, row by row: pair (i, j) with i < j
+    private final PairedStats[] pairs;
+    private final long elapsedNanos;
+
+    private CorrelationMatrix(List<Indicator> indicators, PairedStats[] pairs, long elapsedNanos) {
+        this.indicators = Collections.unmodifiableList(new ArrayList<>(indicators));
+        this.pairs = pairs;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public static CorrelationMatrix compute(IndicatorColumns table, List<Indicator> indicators) {
+        return compute(ForkJoinPool.commonPool(), table, indicators);
+    }
+
+    public static CorrelationMatrix compute(ForkJoinPool pool, IndicatorColumns table, List<Indicator> indicators) {
+        // Copy each column into a primitive array and validity words once, then run every pair over them
+        long start = System.nanoTime();
+        int rowCount = table.getRowCount();
+        int words = (rowCount + 63) / 64;
+        double[][] columns = new double[indicators.size()][];
+        long[][] validity = new long[indicators.size()][];
+        for (int i = 0; i < indicators.size(); i++) {
+            Indicator indicator = indicators.get(i);
+            BitSet rows = table.getValidity(indicator);
+            double[] column = new double[rowCount];
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                column[row] = table.getValue(indicator, row);
+            }
+            columns[i] = column;
+            validity[i] = Arrays.copyOf(rows.toLongArray(), words);
+        }
+        PairedStats[] pairs = computePairs(pool, columns, validity, rowCount);
+        return new CorrelationMatrix(indicators, pairs, System.nanoTime() - start);
+    }
+
+    public static PairedStats[] computePairs(ForkJoinPool pool, double[][] columns, long[][] validity, int rowCount) {
+        // Paired statistics of every column pair (upper triangle, row by row); validity[i] has a bit per row of
+        // columns[i], set where the value is present. Absent values are weighted by 0, so they must be finite
+        int blocks = Math.max(1, (rowCount + BLOCK_ROWS - 1) / BLOCK_ROWS);
+        PairedStatisticsAccumulator[] accumulators = pool.invoke(
+                new BlockTask(columns, validity, rowCount, 0, blocks));
+        PairedStats[] pairs = new PairedStats[accumulators.length];
+        for (int p = 0; p < pairs.length; p++) {
+            pairs[p] = accumulators[p].toStats();
+        }
+        return pairs;
+    }
+
+    public static List<Indicator> numericIndicators(SessionFactory sessionFactory) {
+        // The numeric properties of Country in the Hibernate mapping (not the identifier or version), in mapping
+        // order; each must have an Indicator entry, which tells the columnar tables how to read it
+        ClassMetadata metadata = sessionFactory.getClassMetadata(Country.class);
+        String[] propertyNames = metadata.getPropertyNames();
+        Type[] propertyTypes = metadata.getPropertyTypes();
+        List<Indicator> indicators = new ArrayList<>();
+        for (int i = 0; i < propertyNames.length; i++) {
+            if (i == metadata.getVersionProperty() || propertyTypes[i].isAssociationType()
+                    || !Number.class.isAssignableFrom(propertyTypes[i].getReturnedClass())) {
+                continue;
+            }
+            Indicator indicator = null;
+            for (Indicator candidate : Indicator.values()) {
+                if (candidate.getPropertyName().equals(propertyNames[i])) {
+                    indicator = candidate;
+                }
+            }
+            if (indicator == null) {
+                throw new IllegalStateException("Numeric column Country." + propertyNames[i]
+                        + " has no Indicator entry");
+            }
+            indicators.add(indicator);
+        }
+        return indicators;
+    }
+
+    public List<Indicator> getIndicators() {
+        return indicators;
+    }
+
+    public PairedStats get(Indicator indicatorA, Indicator indicatorB) {
+        // Statistics of a pair in either order (first is indicatorA)
+        int a = indexOf(indicatorA);
+        int b = indexOf(indicatorB);
+        if (a == b) {
+            throw new IllegalArgumentException("A pair needs two different indicators");
+        }
+        PairedStats stats = pairs[pairIndex(Math.min(a, b), Math.max(a, b))];
+        return a < b ? stats : new PairedStats(stats.getSecond(), stats.getFirst(), stats.getCoMoment());
+    }
+
+    public double getCorrelation(Indicator indicatorA, Indicator indicatorB) {
+        // 1 on the diagonal; NaN when the pair has fewer than two rows or a constant column
+        return indicatorA == indicatorB ? 1.0 : get(indicatorA, indicatorB).getCorrelation();
+    }
+
+    public long getCount(Indicator indicatorA, Indicator indicatorB) {
+        // Rows where both indicators have data
+        return get(indicatorA, indicatorB).getCount();
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    private int indexOf(Indicator indicator) {
+        int index = indicators.indexOf(indicator);
+        if (index < 0) {
+            throw new IllegalArgumentException("Indicator not in the matrix: " + indicator.getPropertyName());
+        }
+        return index;
+    }
+
+    private int pairIndex(int a, int b) {
+        return pairIndex(indicators.size(), a, b);
+    }
+
+    private static int pairIndex(int columnCount, int a, int b) {
+        // Pairs before row a of the upper triangle, then the offset of b in row a
+        return a * (2 * columnCount - a - 1) / 2 + (b - a - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "CorrelationMatrix{" +
+                "indicators=" + indicators +
+                ", pairs=" + Arrays.toString(pairs) +
+                '}';
+    }
+
+    // statistics of every pair over blocks [fromBlock, toBlock); splits in halves down to one block, so the merge
+    // order depends only on the row count
+    private static class BlockTask extends RecursiveTask<PairedStatisticsAccumulator[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] columns;
+        private final long[][] validity;
+        private final int rowCount;
+        private final int fromBlock;
+        private final int toBlock;
+
+        private BlockTask(double[][] columns, long[][] validity, int rowCount, int fromBlock, int toBlock) {
+            this.columns = columns;
+            this.validity = validity;
+            this.rowCount = rowCount;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+        }
+
+        @Override
+        protected PairedStatisticsAccumulator[] compute() {
+            if (toBlock - fromBlock > 1) {
+                int mid = (fromBlock + toBlock) >>> 1;
+                BlockTask left = new BlockTask(columns, validity, rowCount, fromBlock, mid);
+                BlockTask right = new BlockTask(columns, validity, rowCount, mid, toBlock);
+                right.fork();
+                PairedStatisticsAccumulator[] merged = left.compute();
+                PairedStatisticsAccumulator[] other = right.join();
+                for (int p = 0; p < merged.length; p++) {
+                    merged[p].combine(other[p]);
+                }
+                return merged;
+            }
+            // Expand the block's validity bits into 0/1 weights once per column, so each pair's loops run over
+            // consecutive rows without branching on missing values
+            int columnCount = columns.length;
+            int fromRow = fromBlock * BLOCK_ROWS;
+            int toRow = Math.min(fromRow + BLOCK_ROWS, rowCount);
+            double[][] weights = new double[columnCount][toRow - fromRow];
+            for (int c = 0; c < columnCount; c++) {
+                for (int row = fromRow; row < toRow; row++) {
+                    weights[c][row - fromRow] = (validity[c][row >>> 6] >>> row) & 1L;
+                }
+            }
+            PairedStatisticsAccumulator[] accumulators =
+                    new PairedStatisticsAccumulator[columnCount * (columnCount - 1) / 2];
+            for (int a = 0; a < columnCount; a++) {
+                for (int b = a + 1; b < columnCount; b++) {
+                    accumulators[pairIndex(columnCount, a, b)] = new PairedStatisticsAccumulator();
+                    accumulators[pairIndex(columnCount, a, b)].combine(pairKernel(
+                            columns[a], columns[b], weights[a], weights[b], fromRow, toRow));
+                }
+            }
+            return accumulators;
+        }
+
+        private static PairedStats pairKernel(double[] x, double[] y, double[] weightX, double[] weightY,
+                                              int fromRow, int toRow) {
+            // Two passes over the block: weighted counts and sums, then squared deviations, the co-moment and the
+            // extremes about the block means; rows missing either value have weight 0 (no division per row, unlike
+            // Welford, and no branch per row)
+            double count = 0;
+            double sumX = 0;
+            double sumY = 0;
+            for (int row = fromRow; row < toRow; row++) {
+                double weight = weightX[row - fromRow] * weightY[row - fromRow];
+                count += weight;
+                sumX += weight * x[row];
+                sumY += weight * y[row];
+            }
+            if (count == 0) {
+                return new PairedStats(new IndicatorStats(0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0, 0),
+                        new IndicatorStats(0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0, 0), 0.0);
+            }
+            double meanX = sumX / count;
+            double meanY = sumY / count;
+            double m2X = 0;
+            double m2Y = 0;
+            double coMoment = 0;
+            double minX = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (int row = fromRow; row < toRow; row++) {
+                double weight = weightX[row - fromRow] * weightY[row - fromRow];
+                double deltaX = weight * (x[row] - meanX);
+                double deltaY = weight * (y[row] - meanY);
+                m2X += deltaX * deltaX;
+                m2Y += deltaY * deltaY;
+                coMoment += deltaX * deltaY;
+                // Missing rows contribute the block mean, which never moves an extreme; plain comparisons
+                // (Math.min and max also order NaN and -0.0, which cost more than the rest of the loop)
+                minX = deltaX < minX - meanX ? meanX + deltaX : minX;
+                maxX = deltaX > maxX - meanX ? meanX + deltaX : maxX;
+                minY = deltaY < minY - meanY ? meanY + deltaY : minY;
+                maxY = deltaY > maxY - meanY ? meanY + deltaY : maxY;
+            }
+            return new PairedStats(new IndicatorStats((long) count, minX, maxX, meanX, m2X),
+                    new IndicatorStats((long) count, minY, maxY, meanY, m2Y), coMoment);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+// correlation coefficients over paired primitive columns
+public enum CorrelationMethod {
+    PEARSON("Pearson") {
+        @Override
+        public double correlate(double[] indicatorA, double[] indicatorB) {
+            return Statistics.correlate(indicatorA, indicatorB).getCorrelation();
+        }
+    },
+    SPEARMAN("Spearman") {
+        @Override
+        public double correlate(double[] indicatorA, double[] indicatorB) {
+            return RankCorrelation.spearman(indicatorA, indicatorB);
+        }
+    },
+    KENDALL("Kendall") {
+        @Override
+        public double correlate(double[] indicatorA, double[] indicatorB) {
+            return RankCorrelation.kendall(indicatorA, indicatorB);
+        }
+    };
+
+    private final String label;
+
+    CorrelationMethod(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    // NaN when either column is constant or there are fewer than two pairs
+    public abstract double correlate(double[] indicatorA, double[] indicatorB);
+}
@@ -0,0 +1,91 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// in-memory set of country codes for constant-time existence and collision checks
+public class CountryCodeIndex {
+    // Keeps IN lists well below JDBC parameter limits
+    private static final int MAX_CODES_PER_QUERY = 500;
+
+    private final SessionFactory sessionFactory;
+    private Set<String> codes;
+
+    public CountryCodeIndex(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public synchronized boolean contains(String code) {
+        // Check whether a code exists, loading the index (codes only) on first use
+        return loadedCodes().contains(code);
+    }
+
+    public synchronized Set<String> findExisting(Collection<String> candidateCodes) {
+        // Get the candidate codes that already exist, e.g. to check a batch of new codes for collisions
+        Set<String> existing = new HashSet<>();
+        if (codes != null) {
+            for (String code : candidateCodes) {
+                if (codes.contains(code)) {
+                    existing.add(code);
+                }
+            }
+            return existing;
+        }
+        // Not loaded yet: ask the primary key index instead of loading every code
+        List<String> batch = new ArrayList<>(Math.min(candidateCodes.size(), MAX_CODES_PER_QUERY));
+        for (String code : candidateCodes) {
+            batch.add(code);
+            if (batch.size() == MAX_CODES_PER_QUERY) {
+                existing.addAll(queryExisting(batch));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            existing.addAll(queryExisting(batch));
+        }
+        return existing;
+    }
+
+    public synchronized void add(String code) {
+        if (codes != null) {
+            codes.add(code);
+        }
+    }
+
+    public synchronized void remove(String code) {
+        if (codes != null) {
+            codes.remove(code);
+        }
+    }
+
+    public synchronized void invalidate() {
+        // Reload on next use, e.g. after writes that bypass the repository
+        codes = null;
+    }
+
+    private Set<String> loadedCodes() {
+        if (codes == null) {
+            codes = new HashSet<>(new CountryProjection(sessionFactory).findCodes());
+        }
+        return codes;
+    }
+
+    private List<String> queryExisting(List<String> batch) {
+        Session session = sessionFactory.openSession();
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> existing = session.createQuery("select c.code from Country c where c.code in (:codes)")
+                    .setParameterList("codes", batch)
+                    .list();
+            return existing;
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.CountryBuilder;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// streaming bulk importer for World Bank data tables (fixed-width text or CSV)
+public class CountryImporter {
+    // Rows written per transaction; JDBC batching (hibernate.jdbc.batch_size) applies within each one
+    private static final int ROWS_PER_TRANSACTION = 10000;
+    private static final Pattern TEXT_COLUMN_SEPARATOR = Pattern.compile("\\s{2,}");
+
+    private final SessionFactory sessionFactory;
+
+    public CountryImporter(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public ImportResult importFile(Path path) throws IOException {
+        // Parse the file line by line and upsert each row through a stateless session
+        boolean csv = path.getFileName().toString().toLowerCase().endsWith(".csv");
+        ImportResult result = new ImportResult();
+        long start = System.nanoTime();
+        Map<String, Long> existingVersions = new HashMap<>();
+        Map<String, String> codesByName = new HashMap<>();
+        loadExistingCountries(existingVersions, codesByName);
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            StatelessSession session = sessionFactory.openStatelessSession();
+            Transaction transaction = session.beginTransaction();
+            try {
+                ColumnLayout layout = null;
+                int lineNumber = 0;
+                int rowsInTransaction = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                        line = line.substring(1);
+                    }
+                    if (isBlankOrSeparator(line)) {
+                        continue;
+                    }
+                    String[] fields = csv ? splitCsv(line) : TEXT_COLUMN_SEPARATOR.split(line.trim());
+                    if (layout == null) {
+                        layout = ColumnLayout.fromHeader(fields);
+                        continue;
+                    }
+                    result.countRead();
+                    Country country;
+                    try {
+                        country = layout.toCountry(fields, codesByName);
+                    } catch (IllegalArgumentException e) {
+                        result.reject(lineNumber, e.getMessage());
+                        continue;
+                    }
+                    Long version = existingVersions.get(country.getCode());
+                    if (version != null) {
+                        // Version-checked like any other update; rows repeated in the file bump it again
+                        country.setVersion(version);
+                        session.update(country);
+                        existingVersions.put(country.getCode(), country.getVersion());
+                        result.countUpdated();
+                    } else {
+                        session.insert(country);
+                        existingVersions.put(country.getCode(), country.getVersion());
+                        codesByName.put(country.getName(), country.getCode());
+                        result.countInserted();
+                    }
+                    if (++rowsInTransaction == ROWS_PER_TRANSACTION) {
+                        transaction.commit();
+                        transaction = session.beginTransaction();
+                        rowsInTransaction = 0;
+                    }
+                }
+                transaction.commit();
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            } finally {
+                session.close();
+            }
+        }
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    private void loadExistingCountries(Map<String, Long> existingVersions, Map<String, String> codesByName) {
+        // Load only codes, names and versions, used to choose insert vs update and to resolve rows without a code
+        Session session = sessionFactory.openSession();
+        try {
+            List<?> rows = session.createQuery("select c.code, c.name, c.version from Country c").list();
+            for (Object row : rows) {
+                Object[] columns = (Object[]) row;
+                existingVersions.put((String) columns[0], (Long) columns[2]);
+                codesByName.put((String) columns[1], (String) columns[0]);
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    private static boolean isBlankOrSeparator(String line) {
+        // Skip empty lines and rules such as ------ or ======
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c != '-' && c != '=' && !Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String[] splitCsv(String line) {
+        // Split a CSV line, honouring double-quoted fields and "" escapes
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    // positions of the known columns, resolved from the header line
+    private static class ColumnLayout {
+        private int code = -1;
+        private int name = -1;
+        private int internetUsers = -1;
+        private int adultLiteracyRate = -1;
+
+        private static ColumnLayout fromHeader(String[] header) {
+            ColumnLayout layout = new ColumnLayout();
+            for (int i = 0; i < header.length; i++) {
+                switch (header[i].toLowerCase().replaceAll("[^a-z]", "")) {
+                    case "code":
+                    case "countrycode":
+                        layout.code = i;
+                        break;
+                    case "name":
+                    case "country":
+                    case "countryname":
+                        layout.name = i;
+                        break;
+                    case "internetusers":
+                        layout.internetUsers = i;
+                        break;
+                    case "literacy":
+                    case "adultliteracyrate":
+                        layout.adultLiteracyRate = i;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (layout.name < 0) {
+                throw new IllegalArgumentException("Header must contain a country name column");
+            }
+            return layout;
+        }
+
+        private Country toCountry(String[] fields, Map<String, String> codesByName) {
+            // Build and validate a country from one row
+            String countryName = field(fields, name);
+            String countryCode = field(fields, code);
+            if (countryName == null) {
+                throw new IllegalArgumentException("Country name is missing");
+            }
+            if (countryCode == null) {
+                countryCode = codesByName.get(countryName);
+                if (countryCode == null) {
+                    throw new IllegalArgumentException("No code column and no existing country named " + countryName);
+                }
+            }
+            if (countryCode.length() != 3) {
+                throw new IllegalArgumentException("Country code must be a 3-character string: " + countryCode);
+            }
+            if (countryName.length() > 32) {
+                throw new IllegalArgumentException("Country name can have a maximum of 32 characters: " + countryName);
+            }
+            return new CountryBuilder(countryCode, countryName)
+                    .withInternetUsers(indicator(fields, internetUsers))
+                    .withAdultLiteracyRate(indicator(fields, adultLiteracyRate))
+                    .build();
+        }
+
+        private static String field(String[] fields, int index) {
+            if (index < 0 || index >= fields.length || fields[index].isEmpty()) {
+                return null;
+            }
+            return fields[index];
+        }
+
+        private static Double indicator(String[] fields, int index) {
+            // Parse an indicator value; empty, -- and .. (World Bank) mean no data
+            String text = field(fields, index);
+            if (text == null || text.equals("--") || text.equals("..")) {
+                return null;
+            }
+            double value;
+            try {
+                value = Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Indicator value is not a number: " + text);
+            }
+            if (!CountryService.fitsIndicatorColumn(value)) {
+                throw new IllegalArgumentException("Indicator value out of range: " + text);
+            }
+            return value;
+        }
+    }
+}
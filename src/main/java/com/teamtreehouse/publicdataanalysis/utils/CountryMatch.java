@@ -0,0 +1,52 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+// one search result: a country and how its code or name matched the search text
+public class CountryMatch {
+    // In rank order: better kinds of match come first
+    public enum Kind {
+        CODE,
+        CODE_PREFIX,
+        NAME_PREFIX,
+        WORD_PREFIX,
+        SIMILAR
+    }
+
+    private final String code;
+    private final String name;
+    private final Kind kind;
+    private final double similarity;
+
+    public CountryMatch(String code, String name, Kind kind, double similarity) {
+        this.code = code;
+        this.name = name;
+        this.kind = kind;
+        this.similarity = similarity;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    // Share of the search text's trigrams found in the name or code (1 for prefix matches)
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    @Override
+    public String toString() {
+        return "CountryMatch{" +
+                "code='" + code + '\'' +
+                ", name='" + name + '\'' +
+                ", kind=" + kind +
+                ", similarity=" + similarity +
+                '}';
+    }
+}
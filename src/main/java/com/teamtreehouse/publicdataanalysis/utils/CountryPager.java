@@ -0,0 +1,140 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import org.hibernate.Query;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// keyset pagination over the country table: each page is an indexed range query, so memory stays at one page
+public class CountryPager {
+    public enum SortColumn {
+        CODE("code"),
+        NAME("name"),
+        INTERNET_USERS("internetUsers"),
+        ADULT_LITERACY_RATE("adultLiteracyRate");
+
+        private final String propertyName;
+
+        SortColumn(String propertyName) {
+            this.propertyName = propertyName;
+        }
+
+        public String getPropertyName() {
+            return propertyName;
+        }
+    }
+
+    private final SessionFactory sessionFactory;
+    private final SortColumn sortColumn;
+    private final int pageSize;
+    // Sort key of the last row returned: (sort value, code); code breaks ties so the order is total
+    private boolean started;
+    private Object lastValue;
+    private String lastCode;
+    private boolean exhausted;
+
+    public CountryPager(SessionFactory sessionFactory, SortColumn sortColumn, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        this.sessionFactory = sessionFactory;
+        this.sortColumn = sortColumn;
+        this.pageSize = pageSize;
+    }
+
+    public void startAfter(String code) {
+        // Position the cursor right after the row with the given code
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            Country country = (Country) session.get(Country.class, code);
+            if (country == null) {
+                throw new IllegalArgumentException("Country code must be an existing, unique, 3-character string");
+            }
+            started = true;
+            lastCode = country.getCode();
+            lastValue = sortValue(country);
+            exhausted = false;
+        } finally {
+            session.close();
+        }
+    }
+
+    public boolean hasNextPage() {
+        return !exhausted;
+    }
+
+    public List<Country> nextPage() {
+        // Fetch the next page of at most pageSize countries
+        if (exhausted) {
+            return Collections.emptyList();
+        }
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            List<Country> page = new ArrayList<>(pageSize);
+            if (sortColumn == SortColumn.CODE) {
+                page.addAll(list(session.createQuery(
+                        "from Country c" + (started ? " where c.code > :lastCode" : "") + " order by c.code"
+                ), pageSize, started));
+            } else {
+                // Rows with no value sort first; seek through them by code, then through the values
+                String column = "c." + sortColumn.getPropertyName();
+                if (!started || lastValue == null) {
+                    page.addAll(list(session.createQuery(
+                            "from Country c where " + column + " is null" + (started ? " and c.code > :lastCode" : "")
+                                    + " order by " + column + ", c.code"
+                    ), pageSize, started));
+                    if (page.size() < pageSize) {
+                        page.addAll(list(session.createQuery(
+                                "from Country c where " + column + " is not null order by " + column + ", c.code"
+                        ), pageSize - page.size(), false));
+                    }
+                } else {
+                    // Written as a range on the leading index column so H2 can seek the (column, code) index
+                    Query query = session.createQuery(
+                            "from Country c where " + column + " >= :lastValue and (" + column + " > :lastValue"
+                                    + " or c.code > :lastCode) order by " + column + ", c.code"
+                    ).setParameter("lastValue", lastValue);
+                    page.addAll(list(query, pageSize, true));
+                }
+            }
+            if (page.size() < pageSize) {
+                exhausted = true;
+            }
+            if (!page.isEmpty()) {
+                Country last = page.get(page.size() - 1);
+                started = true;
+                lastCode = last.getCode();
+                lastValue = sortValue(last);
+            }
+            return page;
+        } finally {
+            session.close();
+        }
+    }
+
+    private List<Country> list(Query query, int maxResults, boolean afterLastCode) {
+        if (afterLastCode) {
+            query.setParameter("lastCode", lastCode);
+        }
+        @SuppressWarnings("unchecked")
+        List<Country> countries = query.setMaxResults(maxResults).setReadOnly(true).list();
+        return countries;
+    }
+
+    private Object sortValue(Country country) {
+        switch (sortColumn) {
+            case NAME:
+                return country.getName();
+            case INTERNET_USERS:
+                return country.getInternetUsers();
+            case ADULT_LITERACY_RATE:
+                return country.getAdultLiteracyRate();
+            default:
+                return country.getCode();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.Indicator;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorTable;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.metadata.ClassMetadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// read-only reads of chosen Country columns, for callers that need a slice of every row rather than entities:
+// rows stream from a forward-only cursor as tuples, in a read-only session that never flushes, so no Country is
+// hydrated, kept in the session or dirty-checked
+public class CountryProjection {
+    // Rows per round trip; H2 embedded ignores it, a TCP connection fetches in batches of this size
+    private static final int FETCH_SIZE = 1000;
+
+    private final SessionFactory sessionFactory;
+
+    public CountryProjection(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public void forEach(List<String> properties, Consumer<Object[]> action) {
+        // Pass the values of the given Country properties (the identifier is "code") row by row; the array is reused
+        // for the next row, so the action must copy what it keeps
+        checkProperties(properties);
+        StringBuilder select = new StringBuilder("select ");
+        for (int i = 0; i < properties.size(); i++) {
+            select.append(i == 0 ? "" : ", ").append("c.").append(properties.get(i));
+        }
+        Object[] row = new Object[properties.size()];
+        Session session = openReadOnlySession(sessionFactory);
+        try {
+            ScrollableResults results = session.createQuery(select.append(" from Country c").toString())
+                    .setReadOnly(true)
+                    .setFetchSize(FETCH_SIZE)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                while (results.next()) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = results.get(i);
+                    }
+                    action.accept(row);
+                }
+            } finally {
+                results.close();
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    public List<String> findCodes() {
+        // Every country code, without any other column
+        List<String> codes = new ArrayList<>();
+        forEach(Arrays.asList("code"), row -> codes.add((String) row[0]));
+        return codes;
+    }
+
+    public void forEachCodeAndName(BiConsumer<String, String> action) {
+        forEach(Arrays.asList("code", "name"), row -> action.accept((String) row[0], (String) row[1]));
+    }
+
+    public IndicatorTable readTable(boolean withNames) {
+        // Columnar copy of the code and indicator columns, plus the names when asked for (null names otherwise)
+        Indicator[] indicators = Indicator.values();
+        List<String> properties = new ArrayList<>();
+        properties.add("code");
+        if (withNames) {
+            properties.add("name");
+        }
+        int firstIndicator = properties.size();
+        for (Indicator indicator : indicators) {
+            properties.add(indicator.getPropertyName());
+        }
+        IndicatorTable.Builder builder = new IndicatorTable.Builder(0);
+        Double[] values = new Double[indicators.length];
+        forEach(properties, row -> {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (Double) row[firstIndicator + i];
+            }
+            builder.addRow((String) row[0], withNames ? (String) row[1] : null, values);
+        });
+        return builder.build();
+    }
+
+    static Session openReadOnlySession(SessionFactory sessionFactory) {
+        // Loaded entities are read-only and the session never flushes, so it keeps no snapshots and runs no dirty
+        // checks
+        Session session = sessionFactory.openSession();
+        session.setDefaultReadOnly(true);
+        session.setFlushMode(FlushMode.MANUAL);
+        return session;
+    }
+
+    private void checkProperties(List<String> properties) {
+        // Only mapped names reach the query text
+        ClassMetadata metadata = sessionFactory.getClassMetadata(Country.class);
+        List<String> mapped = Arrays.asList(metadata.getPropertyNames());
+        if (properties.isEmpty()) {
+            throw new IllegalArgumentException("A projection needs at least one property");
+        }
+        for (String property : properties) {
+            if (!property.equals(metadata.getIdentifierPropertyName()) && !mapped.contains(property)) {
+                throw new IllegalArgumentException("Country has no property " + property);
+            }
+        }
+    }
+}
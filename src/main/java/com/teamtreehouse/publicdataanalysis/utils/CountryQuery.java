@@ -0,0 +1,94 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.utils.CountryPager.SortColumn;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// filters (all must match), a sort column and a row limit, run by CountryQueryEngine
+public class CountryQuery {
+    private final List<IndicatorFilter> filters = new ArrayList<>();
+    private SortColumn sortColumn = SortColumn.CODE;
+    private boolean descending;
+    private int limit = Integer.MAX_VALUE;
+
+    public CountryQuery where(IndicatorFilter filter) {
+        filters.add(filter);
+        return this;
+    }
+
+    public CountryQuery orderBy(SortColumn sortColumn, boolean descending) {
+        this.sortColumn = sortColumn;
+        this.descending = descending;
+        return this;
+    }
+
+    public CountryQuery limit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    public List<IndicatorFilter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
+    public SortColumn getSortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    // Integer.MAX_VALUE when unlimited
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isLimited() {
+        return limit != Integer.MAX_VALUE;
+    }
+
+    public String toSqlWhere() {
+        // " WHERE a AND b" with one ? per filter, in getFilters() order; empty without filters
+        if (filters.isEmpty()) {
+            return "";
+        }
+        StringBuilder where = new StringBuilder(" WHERE ");
+        for (int i = 0; i < filters.size(); i++) {
+            where.append(i == 0 ? "" : " AND ").append(filters.get(i).toSql());
+        }
+        return where.toString();
+    }
+
+    public void bindFilters(PreparedStatement statement) throws SQLException {
+        // Bind the operands of toSqlWhere(), starting at parameter 1
+        for (int i = 0; i < filters.size(); i++) {
+            statement.setDouble(i + 1, filters.get(i).getOperand());
+        }
+    }
+
+    public String toSqlOrderBy() {
+        // Sort column then code, both in the same direction, so H2 can walk a (column, code) index either way;
+        // NULLs come first ascending and last descending, as in H2's default
+        String direction = descending ? " DESC" : "";
+        String orderBy = " ORDER BY " + sortColumn.getPropertyName() + direction;
+        return sortColumn == SortColumn.CODE ? orderBy : orderBy + ", code" + direction;
+    }
+
+    @Override
+    public String toString() {
+        return "CountryQuery{" +
+                "filters=" + filters +
+                ", sortColumn=" + sortColumn +
+                ", descending=" + descending +
+                ", limit=" + (isLimited() ? Integer.toString(limit) : "none") +
+                '}';
+    }
+}
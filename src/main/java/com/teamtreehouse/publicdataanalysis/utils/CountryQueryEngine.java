@@ -0,0 +1,172 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.CountryBuilder;
+import com.teamtreehouse.publicdataanalysis.model.Indicator;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorColumns;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// runs a CountryQuery either in H2 (filters, sort and limit pushed down to the (column, code) indexes, so a selective
+// query touches only the matching index range) or over a columnar table in memory (validity and filter bitmaps,
+// then a bounded heap of limit rows); both return the same rows, count and statistics
+public class CountryQueryEngine {
+    public enum Plan {
+        DATABASE,
+        MEMORY
+    }
+
+    private static final String SELECT_SQL = "SELECT code, name, internetUsers, adultLiteracyRate FROM Country";
+
+    public static CountryQueryResult execute(Connection connection, CountryQuery query) throws SQLException {
+        // Two statements: the limited rows, and the aggregate query with the same filters (which also gives
+        // the match count when the limit was reached)
+        long start = System.nanoTime();
+        List<Country> rows = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_SQL + query.toSqlWhere()
+                + query.toSqlOrderBy() + (query.isLimited() ? " LIMIT " + query.getLimit() : ""))) {
+            query.bindFilters(statement);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    rows.add(new CountryBuilder(resultSet.getString(1), resultSet.getString(2))
+                            .withInternetUsers(getDouble(resultSet, 3))
+                            .withAdultLiteracyRate(getDouble(resultSet, 4))
+                            .build());
+                }
+            }
+        }
+        IndicatorSummary summary;
+        int matchCount = rows.size();
+        if (query.getFilters().isEmpty()) {
+            summary = IndicatorSummary.fromDatabase(connection);
+            if (matchCount == query.getLimit()) {
+                try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM Country");
+                     ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    matchCount = resultSet.getInt(1);
+                }
+            }
+        } else {
+            summary = IndicatorSummary.fromDatabase(connection, query);
+            if (matchCount == query.getLimit()) {
+                matchCount = countFiltered(summary, query);
+            }
+        }
+        return new CountryQueryResult(rows, matchCount, summary, Plan.DATABASE, System.nanoTime() - start);
+    }
+
+    public static CountryQueryResult execute(IndicatorColumns table, CountryQuery query) {
+        // One pass per filter over its column, then O(n log limit) to pick the first rows in sort order
+        long start = System.nanoTime();
+        BitSet matching = matchingRows(table, query.getFilters());
+        int matchCount = matching.cardinality();
+        Comparator<Integer> order = rowOrder(table, query);
+        List<Integer> selected = new ArrayList<>(Math.min(matchCount, query.getLimit()));
+        if (matchCount <= query.getLimit()) {
+            for (int row = matching.nextSetBit(0); row >= 0; row = matching.nextSetBit(row + 1)) {
+                selected.add(row);
+            }
+        } else {
+            // Max-heap of the best rows so far: its head is the worst kept row, replaced by any better one
+            PriorityQueue<Integer> heap = new PriorityQueue<>(query.getLimit() + 1, order.reversed());
+            for (int row = matching.nextSetBit(0); row >= 0; row = matching.nextSetBit(row + 1)) {
+                if (heap.size() < query.getLimit()) {
+                    heap.add(row);
+                } else if (order.compare(row, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(row);
+                }
+            }
+            selected.addAll(heap);
+        }
+        selected.sort(order);
+        List<Country> rows = new ArrayList<>(selected.size());
+        for (int row : selected) {
+            rows.add(new CountryBuilder(table.getCode(row), table.getName(row))
+                    .withInternetUsers(valueOrNull(table, Indicator.INTERNET_USERS, row))
+                    .withAdultLiteracyRate(valueOrNull(table, Indicator.ADULT_LITERACY_RATE, row))
+                    .build());
+        }
+        IndicatorSummary summary = IndicatorSummary.fromTable(table, matching);
+        return new CountryQueryResult(rows, matchCount, summary, Plan.MEMORY, System.nanoTime() - start);
+    }
+
+    public static BitSet matchingRows(IndicatorColumns table, List<IndicatorFilter> filters) {
+        // AND of every filter; each starts from its indicator's validity, so rows without data drop out
+        BitSet matching = new BitSet(table.getRowCount());
+        matching.set(0, table.getRowCount());
+        for (IndicatorFilter filter : filters) {
+            Indicator indicator = filter.getIndicator();
+            matching.and(table.getValidity(indicator));
+            for (int row = matching.nextSetBit(0); row >= 0; row = matching.nextSetBit(row + 1)) {
+                if (!filter.getOperator().test(table.getValue(indicator, row), filter.getOperand())) {
+                    matching.clear(row);
+                }
+            }
+        }
+        return matching;
+    }
+
+    private static int countFiltered(IndicatorSummary summary, CountryQuery query) {
+        // Every matching row has data for each filtered indicator, so the summary already counts the matches
+        boolean internetUsers = false;
+        boolean adultLiteracyRate = false;
+        for (IndicatorFilter filter : query.getFilters()) {
+            internetUsers |= filter.getIndicator() == Indicator.INTERNET_USERS;
+            adultLiteracyRate |= filter.getIndicator() == Indicator.ADULT_LITERACY_RATE;
+        }
+        if (internetUsers && adultLiteracyRate) {
+            return (int) summary.getPaired().getCount();
+        }
+        return (int) (internetUsers ? summary.getInternetUsers() : summary.getAdultLiteracyRate()).getCount();
+    }
+
+    private static Comparator<Integer> rowOrder(IndicatorColumns table, CountryQuery query) {
+        // Same order as CountryQuery.toSqlOrderBy(): sort column (missing values first), then code
+        Comparator<Integer> byCode = Comparator.comparing(table::getCode);
+        Comparator<Integer> order;
+        switch (query.getSortColumn()) {
+            case NAME:
+                order = Comparator.<Integer, String>comparing(table::getName).thenComparing(byCode);
+                break;
+            case INTERNET_USERS:
+                order = byIndicator(table, Indicator.INTERNET_USERS).thenComparing(byCode);
+                break;
+            case ADULT_LITERACY_RATE:
+                order = byIndicator(table, Indicator.ADULT_LITERACY_RATE).thenComparing(byCode);
+                break;
+            default:
+                order = byCode;
+        }
+        return query.isDescending() ? order.reversed() : order;
+    }
+
+    private static Comparator<Integer> byIndicator(IndicatorColumns table, Indicator indicator) {
+        return (a, b) -> {
+            boolean presentA = table.isPresent(indicator, a);
+            boolean presentB = table.isPresent(indicator, b);
+            if (presentA && presentB) {
+                return Double.compare(table.getValue(indicator, a), table.getValue(indicator, b));
+            }
+            return Boolean.compare(presentA, presentB);
+        };
+    }
+
+    private static Double valueOrNull(IndicatorColumns table, Indicator indicator, int row) {
+        return table.isPresent(indicator, row) ? table.getValue(indicator, row) : null;
+    }
+
+    private static Double getDouble(ResultSet resultSet, int column) throws SQLException {
+        // Legacy databases store the indicators as DECIMAL; read either type as Double
+        double value = resultSet.getDouble(column);
+        return resultSet.wasNull() ? null : value;
+    }
+}
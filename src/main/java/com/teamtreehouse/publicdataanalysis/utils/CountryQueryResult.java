@@ -0,0 +1,56 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+
+import java.util.Collections;
+import java.util.List;
+
+// the first rows of a query in sort order, with the match count and statistics over every matching row
+public class CountryQueryResult {
+    private final List<Country> rows;
+    private final int matchCount;
+    private final IndicatorSummary summary;
+    private final CountryQueryEngine.Plan plan;
+    private final long elapsedNanos;
+
+    public CountryQueryResult(List<Country> rows, int matchCount, IndicatorSummary summary,
+                              CountryQueryEngine.Plan plan, long elapsedNanos) {
+        this.rows = Collections.unmodifiableList(rows);
+        this.matchCount = matchCount;
+        this.summary = summary;
+        this.plan = plan;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public List<Country> getRows() {
+        return rows;
+    }
+
+    // Rows matching the filters, before the limit
+    public int getMatchCount() {
+        return matchCount;
+    }
+
+    // Statistics over the matching rows, not only the returned ones
+    public IndicatorSummary getSummary() {
+        return summary;
+    }
+
+    public CountryQueryEngine.Plan getPlan() {
+        return plan;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "CountryQueryResult{" +
+                "rows=" + rows.size() +
+                ", matchCount=" + matchCount +
+                ", plan=" + plan +
+                ", elapsedNanos=" + elapsedNanos +
+                '}';
+    }
+}
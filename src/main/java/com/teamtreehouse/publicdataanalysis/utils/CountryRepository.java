@@ -0,0 +1,422 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.CountryBuilder;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorTable;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorValue;
+import org.hibernate.LockMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.StaleStateException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// country data access with a read-through cache keyed by code and a code and name search index, both kept current
+// by the write methods; writes check the version column, so a stale cached copy (another process wrote the row)
+// fails instead of overwriting, and is dropped from the cache. Committed writes are appended to the change journal,
+// when there is one. Reads take no lock: they use the published Snapshot, which the write methods (serialized by
+// this object's monitor) replace after each commit
+public class CountryRepository {
+    private static final Comparator<Country> BY_CODE = Comparator.comparing(Country::getCode);
+
+    private final SessionFactory sessionFactory;
+    private final ChangeJournal journal;
+    private final CountryProjection projection;
+    private final CountryCodeIndex codeIndex;
+    private final IndicatorAggregates aggregates;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(null, null, false, null));
+    // Single countries read by findByCode before every country is loaded; values are never modified
+    private final ConcurrentMap<String, Country> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public CountryRepository(SessionFactory sessionFactory) {
+        this(sessionFactory, null);
+    }
+
+    public CountryRepository(SessionFactory sessionFactory, ChangeJournal journal) {
+        this.sessionFactory = sessionFactory;
+        this.journal = journal;
+        this.projection = new CountryProjection(sessionFactory);
+        this.codeIndex = new CountryCodeIndex(sessionFactory);
+        this.aggregates = new IndicatorAggregates(sessionFactory);
+    }
+
+    public List<Country> findAll() {
+        // Get all countries in code order, scanning the table only when the snapshot does not hold them yet
+        long start = Metrics.start();
+        Snapshot seen = snapshot.get();
+        List<Country> countries = seen.countries;
+        if (countries != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+            Session session = CountryProjection.openReadOnlySession(sessionFactory);
+            try {
+                @SuppressWarnings("unchecked")
+                List<Country> loaded = session.createQuery("from Country c order by c.code").setReadOnly(true).list();
+                countries = Collections.unmodifiableList(loaded);
+            } finally {
+                session.close();
+            }
+            // Published only if no write replaced the snapshot meanwhile (the rows could be older than that write)
+            snapshot.compareAndSet(seen, new Snapshot(countries, seen.table, seen.tableHasNames, seen.searchIndex));
+        }
+        // Instances are shared, so callers must not modify them
+        Metrics.record("countries.findAll", start);
+        return countries;
+    }
+
+    public IndicatorTable findTable(boolean withNames) {
+        // Columnar copy of every country for the table and statistics views, built once per snapshot: from the
+        // snapshot's countries when it holds them, otherwise a projection of just the code, indicator and (when
+        // asked for) name columns. A table with names also serves callers that do not need them
+        long start = Metrics.start();
+        Snapshot seen = snapshot.get();
+        IndicatorTable table = seen.table;
+        if (table != null && (seen.tableHasNames || !withNames)) {
+            hitCount.incrementAndGet();
+        } else {
+            boolean hasNames = withNames;
+            if (seen.countries != null) {
+                hitCount.incrementAndGet();
+                table = IndicatorTable.fromCountries(seen.countries);
+                hasNames = true;
+            } else {
+                missCount.incrementAndGet();
+                table = projection.readTable(withNames);
+            }
+            snapshot.compareAndSet(seen, new Snapshot(seen.countries, table, hasNames, seen.searchIndex));
+        }
+        Metrics.record("countries.findTable", start);
+        return table;
+    }
+
+    public Country findByCode(String code) {
+        // Get a country by code; the returned copy can be modified and passed to update()
+        long start = Metrics.start();
+        Snapshot seen = snapshot.get();
+        Country country;
+        if (seen.countries != null) {
+            hitCount.incrementAndGet();
+            int index = Collections.binarySearch(seen.countries, new CountryBuilder(code, null).build(), BY_CODE);
+            country = index < 0 ? null : seen.countries.get(index);
+        } else {
+            country = cache.get(code);
+            if (country != null) {
+                hitCount.incrementAndGet();
+            } else {
+                missCount.incrementAndGet();
+                Session session = sessionFactory.openSession();
+                try {
+                    country = session.get(Country.class, code);
+                } finally {
+                    session.close();
+                }
+                if (country != null) {
+                    cache.putIfAbsent(code, country);
+                    // A write published since the read may have changed or deleted the row: keep it out of the cache
+                    if (snapshot.get() != seen) {
+                        cache.remove(code, country);
+                    }
+                }
+            }
+        }
+        Country copy = country == null ? null : copyOf(country);
+        Metrics.record("countries.findByCode", start);
+        return copy;
+    }
+
+    public List<CountryMatch> search(String text, int limit) {
+        // Find countries by code or name, best matches first, building the search index on first use
+        long start = Metrics.start();
+        Snapshot seen = snapshot.get();
+        CountrySearchIndex searchIndex = seen.searchIndex;
+        if (searchIndex == null) {
+            searchIndex = new CountrySearchIndex();
+            if (seen.countries != null) {
+                for (Country country : seen.countries) {
+                    searchIndex.add(country.getCode(), country.getName());
+                }
+            } else {
+                projection.forEachCodeAndName(searchIndex::add);
+            }
+            // The write methods update the published index in place from here on
+            snapshot.compareAndSet(seen, new Snapshot(seen.countries, seen.table, seen.tableHasNames, searchIndex));
+        }
+        List<CountryMatch> matches = searchIndex.search(text, limit);
+        Metrics.record("countries.search", start);
+        return matches;
+    }
+
+    public synchronized void save(Country country) {
+        // Insert a new country, updating the indicator aggregates in the same transaction
+        long start = Metrics.start();
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            session.save(country);
+            readBack(session, country);
+            aggregates.apply(session, null, country);
+            session.getTransaction().commit();
+            aggregates.commitPending();
+        } finally {
+            aggregates.discardPending();
+            session.close();
+        }
+        publish(null, copyOf(country));
+        codeIndex.add(country.getCode());
+        journal(JournalRecord.Type.ADD, country.getCode(), country);
+        Metrics.record("countries.save", start);
+    }
+
+    public synchronized CountryWrite upsert(Country country) {
+        // Insert the country, or write its name and indicator values over the stored row; a non-null version
+        // must match the stored one
+        long start = Metrics.start();
+        CountryWrite stored = write(country.getCode(), country.getCode(), country.getVersion(), true, current -> {
+            current.setName(country.getName());
+            current.setInternetUsers(country.getInternetUsers());
+            current.setAdultLiteracyRate(country.getAdultLiteracyRate());
+        });
+        Metrics.record("countries.upsert", start);
+        return stored;
+    }
+
+    public synchronized Country patch(String code, Long expectedVersion, Consumer<Country> changes) {
+        // Apply changes to the stored country; only the columns they change are updated.
+        // A null expectedVersion skips the check against the caller's copy (the row is still version-checked)
+        long start = Metrics.start();
+        Country stored = write(code, code, expectedVersion, false, changes).getCountry();
+        Metrics.record("countries.patch", start);
+        return stored;
+    }
+
+    public synchronized Country rename(String code, String newCode, Long expectedVersion, Consumer<Country> changes) {
+        // Move a country (and its indicator values) to a new code, applying changes in the same transaction;
+        // the primary key cannot be updated in place, so the row is re-inserted under the new code
+        long start = Metrics.start();
+        Country stored = write(code, newCode, expectedVersion, false, changes).getCountry();
+        Metrics.record("countries.rename", start);
+        return stored;
+    }
+
+    public synchronized void delete(Country country) {
+        // Delete a country, updating the indicator aggregates in the same transaction
+        long start = Metrics.start();
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            Country before = lockCurrent(session, country.getCode());
+            session.delete(country);
+            session.flush();
+            aggregates.apply(session, before, null);
+            session.getTransaction().commit();
+            aggregates.commitPending();
+        } catch (StaleStateException e) {
+            forget(country.getCode());
+            throw e;
+        } finally {
+            aggregates.discardPending();
+            session.close();
+        }
+        publish(country.getCode(), null);
+        codeIndex.remove(country.getCode());
+        journal(JournalRecord.Type.DELETE, country.getCode(), null);
+        Metrics.record("countries.delete", start);
+    }
+
+    public synchronized void invalidate() {
+        // Drop all cached countries, e.g. after writes that bypass this repository (bulk import); a RESET record
+        // tells journal consumers to rebuild as well
+        snapshot.set(new Snapshot(null, null, false, null));
+        cache.clear();
+        codeIndex.invalidate();
+        aggregates.invalidate();
+        journal(JournalRecord.Type.RESET, null, null);
+    }
+
+    public CountryCodeIndex getCodeIndex() {
+        // Code existence checks that do not need the country rows
+        return codeIndex;
+    }
+
+    public IndicatorAggregates getAggregates() {
+        // Running indicator statistics, kept current by the write methods
+        return aggregates;
+    }
+
+    public boolean isFullyLoaded() {
+        return snapshot.get().countries != null;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private CountryWrite write(String code, String newCode, Long expectedVersion, boolean insertMissing,
+                               Consumer<Country> changes) {
+        // Read, change and flush the row in one transaction, updating the indicator aggregates alongside
+        Session session = sessionFactory.openSession();
+        Country before;
+        Country after;
+        try {
+            session.beginTransaction();
+            Country current = session.get(Country.class, code);
+            if (current == null && (expectedVersion != null || !insertMissing)) {
+                if (expectedVersion != null) {
+                    throw new StaleObjectStateException(Country.class.getName(), code);
+                }
+                throw new NoSuchElementException("Country not found: " + code);
+            }
+            if (current != null && expectedVersion != null && !expectedVersion.equals(current.getVersion())) {
+                throw new StaleObjectStateException(Country.class.getName(), code);
+            }
+            before = current == null ? null : copyOf(current);
+            if (current == null) {
+                after = new CountryBuilder(code, null).build();
+                changes.accept(after);
+                session.save(after);
+            } else if (!newCode.equals(code)) {
+                after = copyOf(current);
+                after.setCode(newCode);
+                after.setVersion(current.getVersion() + 1);
+                changes.accept(after);
+                session.delete(current);
+                session.save(after);
+                session.createSQLQuery("UPDATE IndicatorValue SET countryCode = :newCode WHERE countryCode = :code")
+                        .addSynchronizedEntityClass(IndicatorValue.class)
+                        .setParameter("newCode", newCode)
+                        .setParameter("code", code)
+                        .executeUpdate();
+            } else {
+                after = current;
+                changes.accept(after);
+            }
+            readBack(session, after);
+            aggregates.apply(session, before, after);
+            session.getTransaction().commit();
+            aggregates.commitPending();
+        } catch (StaleStateException e) {
+            forget(code);
+            throw e;
+        } finally {
+            aggregates.discardPending();
+            session.close();
+        }
+        if (!newCode.equals(code)) {
+            publish(code, null);
+            codeIndex.remove(code);
+        }
+        publish(null, copyOf(after));
+        codeIndex.add(newCode);
+        journal(before == null ? JournalRecord.Type.ADD : JournalRecord.Type.UPDATE, code, after);
+        return new CountryWrite(copyOf(after), before == null);
+    }
+
+    private void publish(String removedCode, Country stored) {
+        // After a commit: replace the snapshot first, so a findByCode that read the row before the commit sees the
+        // change and keeps its copy out of the cache, then update the cache and the search index. Either removes
+        // a country (removedCode) or inserts or replaces one (stored, not modified afterwards)
+        String code = removedCode != null ? removedCode : stored.getCode();
+        Snapshot current = snapshot.get();
+        List<Country> countries = current.countries;
+        if (countries != null) {
+            List<Country> next = new ArrayList<>(countries.size() + 1);
+            next.addAll(countries);
+            int index = Collections.binarySearch(next, stored != null ? stored : new CountryBuilder(code, null).build(),
+                    BY_CODE);
+            if (index >= 0 && stored == null) {
+                next.remove(index);
+            } else if (index >= 0) {
+                next.set(index, stored);
+            } else if (stored != null) {
+                next.add(-index - 1, stored);
+            }
+            countries = Collections.unmodifiableList(next);
+        }
+        snapshot.set(new Snapshot(countries, null, false, current.searchIndex));
+        if (stored == null) {
+            cache.remove(code);
+        } else {
+            cache.put(code, stored);
+        }
+        if (current.searchIndex != null) {
+            if (stored == null) {
+                current.searchIndex.remove(code);
+            } else {
+                current.searchIndex.add(code, stored.getName());
+            }
+        }
+    }
+
+    private void journal(JournalRecord.Type type, String code, Country country) {
+        // Record a committed change; the journal serializes the country right away
+        if (journal != null) {
+            journal.append(type, code, country);
+        }
+    }
+
+    private void forget(String code) {
+        // Another process changed or deleted the row: drop what this process cached about it
+        snapshot.set(new Snapshot(null, null, false, null));
+        cache.remove(code);
+        codeIndex.invalidate();
+    }
+
+    private static Country lockCurrent(Session session, String code) {
+        // Read the stored row (locked until commit) as the "before" image, then detach it for the write
+        Country current = session.get(Country.class, code, LockMode.PESSIMISTIC_WRITE);
+        if (current != null) {
+            session.evict(current);
+        }
+        return current;
+    }
+
+    private static void readBack(Session session, Country country) {
+        // Flush, then reload the values as stored (DECIMAL(11,8)) so the aggregates see exactly what the table holds
+        session.flush();
+        session.refresh(country);
+    }
+
+    private static Country copyOf(Country country) {
+        Country copy = new CountryBuilder(country.getCode(), country.getName())
+                .withInternetUsers(country.getInternetUsers())
+                .withAdultLiteracyRate(country.getAdultLiteracyRate())
+                .build();
+        copy.setVersion(country.getVersion());
+        return copy;
+    }
+
+    // what reads see: every country in code order (null until findAll loads them), the table built from them or
+    // from a projection, and the search index (null until the first search); each field is immutable except the
+    // search index, which the write methods update in place
+    private static class Snapshot {
+        private final List<Country> countries;
+        private final IndicatorTable table;
+        private final boolean tableHasNames;
+        private final CountrySearchIndex searchIndex;
+
+        private Snapshot(List<Country> countries, IndicatorTable table, boolean tableHasNames,
+                         CountrySearchIndex searchIndex) {
+            this.countries = countries;
+            this.table = table;
+            this.tableHasNames = tableHasNames;
+            this.searchIndex = searchIndex;
+        }
+    }
+}
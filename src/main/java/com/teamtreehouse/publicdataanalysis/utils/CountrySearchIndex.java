@@ -0,0 +1,196 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+// in-memory search over country codes and names: a sorted map of search terms answers prefix searches with one
+// range scan, and a trigram index finds names typed with typos; both are updated one country at a time, so writes
+// never rebuild them. Searches need no lock and can run while one thread at a time adds or removes countries
+// (CountryRepository's write methods); a search running during a change may or may not see it
+public class CountrySearchIndex {
+    // Share of the search text's trigrams a code or name must contain to be a similar match
+    private static final double MIN_SIMILARITY = 0.5;
+    // Shorter search text has too few trigrams to tell similar names apart
+    private static final int MIN_SIMILAR_LENGTH = 3;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9]+");
+    private static final Comparator<CountryMatch> RANK = Comparator.comparing(CountryMatch::getKind)
+            .thenComparing(Comparator.comparingDouble(CountryMatch::getSimilarity).reversed())
+            .thenComparing(match -> match.getName() == null ? "" : match.getName())
+            .thenComparing(CountryMatch::getCode);
+
+    // Indexed countries by code, for results, ranking and removing a country's old terms
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Normalized code, name and each name suffix starting at a word, e.g. "states" for "United States", to codes
+    private final ConcurrentNavigableMap<String, Set<String>> terms = new ConcurrentSkipListMap<>();
+    // Trigrams of the code and of each name word, padded so word starts weigh more, to codes
+    private final Map<String, Set<String>> trigrams = new ConcurrentHashMap<>();
+
+    public void add(String code, String name) {
+        // Index a country, replacing what was indexed under its code
+        remove(code);
+        Entry entry = new Entry(name, normalize(code), name == null ? "" : normalize(name));
+        entries.put(code, entry);
+        for (String term : terms(entry)) {
+            terms.computeIfAbsent(term, key -> ConcurrentHashMap.newKeySet()).add(code);
+        }
+        for (String trigram : trigrams(entry.normalizedCode + " " + entry.normalizedName)) {
+            trigrams.computeIfAbsent(trigram, key -> ConcurrentHashMap.newKeySet()).add(code);
+        }
+    }
+
+    public void remove(String code) {
+        Entry entry = entries.remove(code);
+        if (entry == null) {
+            return;
+        }
+        for (String term : terms(entry)) {
+            removePosting(terms, term, code);
+        }
+        for (String trigram : trigrams(entry.normalizedCode + " " + entry.normalizedName)) {
+            removePosting(trigrams, trigram, code);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        terms.clear();
+        trigrams.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public List<CountryMatch> search(String text, int limit) {
+        // Ranked matches: exact code, code prefix, name prefix, name word prefix, then similar codes and names.
+        // Case and accents are ignored, so "cote" finds "Cote d'Ivoire" however its accents are stored
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        String query = normalize(text);
+        if (query.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, CountryMatch> matches = new HashMap<>();
+        for (Set<String> codes : terms.subMap(query, true, query + Character.MAX_VALUE, false).values()) {
+            for (String code : codes) {
+                // A country removed since its terms were read has no entry
+                Entry entry = entries.get(code);
+                if (entry != null && !matches.containsKey(code)) {
+                    matches.put(code, new CountryMatch(code, entry.name, prefixKind(entry, query), 1));
+                }
+            }
+        }
+        // Every prefix match outranks every similar one, so look for similar names only when there is room
+        if (matches.size() < limit && query.length() >= MIN_SIMILAR_LENGTH) {
+            Set<String> queryTrigrams = trigrams(query);
+            Map<String, Integer> shared = new HashMap<>();
+            for (String trigram : queryTrigrams) {
+                for (String code : trigrams.getOrDefault(trigram, Collections.emptySet())) {
+                    shared.merge(code, 1, Integer::sum);
+                }
+            }
+            for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+                double similarity = (double) entry.getValue() / queryTrigrams.size();
+                Entry indexed = entries.get(entry.getKey());
+                if (indexed != null && similarity >= MIN_SIMILARITY && !matches.containsKey(entry.getKey())) {
+                    matches.put(entry.getKey(), new CountryMatch(entry.getKey(), indexed.name,
+                            CountryMatch.Kind.SIMILAR, similarity));
+                }
+            }
+        }
+        // A short prefix can match most countries: keep the best limit matches in a heap instead of sorting them all
+        PriorityQueue<CountryMatch> best = new PriorityQueue<>(Math.min(matches.size(), limit) + 1, RANK.reversed());
+        for (CountryMatch match : matches.values()) {
+            best.add(match);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<CountryMatch> ranked = new ArrayList<>(best);
+        ranked.sort(RANK);
+        return ranked;
+    }
+
+    private static CountryMatch.Kind prefixKind(Entry entry, String query) {
+        // Which of the country's terms made it a prefix match
+        if (entry.normalizedCode.equals(query)) {
+            return CountryMatch.Kind.CODE;
+        }
+        if (entry.normalizedCode.startsWith(query)) {
+            return CountryMatch.Kind.CODE_PREFIX;
+        }
+        if (entry.normalizedName.startsWith(query)) {
+            return CountryMatch.Kind.NAME_PREFIX;
+        }
+        return CountryMatch.Kind.WORD_PREFIX;
+    }
+
+    private static Set<String> terms(Entry entry) {
+        Set<String> terms = new LinkedHashSet<>();
+        terms.add(entry.normalizedCode);
+        String normalizedName = entry.normalizedName;
+        terms.add(normalizedName);
+        for (int space = normalizedName.indexOf(' '); space >= 0; space = normalizedName.indexOf(' ', space + 1)) {
+            terms.add(normalizedName.substring(space + 1));
+        }
+        terms.remove("");
+        return terms;
+    }
+
+    private static Set<String> trigrams(String normalizedText) {
+        Set<String> trigrams = new HashSet<>();
+        for (String word : normalizedText.split(" ")) {
+            if (!word.isEmpty()) {
+                String padded = "  " + word + " ";
+                for (int i = 0; i + 3 <= padded.length(); i++) {
+                    trigrams.add(padded.substring(i, i + 3));
+                }
+            }
+        }
+        return trigrams;
+    }
+
+    private static void removePosting(Map<String, Set<String>> index, String key, String code) {
+        Set<String> codes = index.get(key);
+        if (codes != null) {
+            codes.remove(code);
+            if (codes.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    static String normalize(String text) {
+        // Lower case ASCII words separated by single spaces: accents dropped, punctuation treated as a space
+        String decomposed = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(decomposed.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static class Entry {
+        private final String name;
+        private final String normalizedCode;
+        private final String normalizedName;
+
+        private Entry(String name, String normalizedCode, String normalizedName) {
+            this.name = name;
+            this.normalizedCode = normalizedCode;
+            this.normalizedName = normalizedName;
+        }
+    }
+}
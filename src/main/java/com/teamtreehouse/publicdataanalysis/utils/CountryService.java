@@ -0,0 +1,185 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.CountryBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+// country reads, validated writes and statistics shared by the menu and the HTTP server;
+// thread-safe: every call uses its own session, and check-then-write sequences are serialized
+public class CountryService {
+    private static final List<String> PATCH_FIELDS = Arrays.asList("name", "internetUsers", "adultLiteracyRate");
+
+    private final CountryRepository repository;
+
+    public CountryService(CountryRepository repository) {
+        this.repository = repository;
+    }
+
+    public List<Country> findAll() {
+        return repository.findAll();
+    }
+
+    public Country findByCode(String code) {
+        // Get a modifiable copy of a country, or null when the code does not exist
+        return repository.findByCode(code);
+    }
+
+    public List<CountryMatch> search(String text, int limit) {
+        // Countries whose code or name matches the text, best first; see CountrySearchIndex
+        return repository.search(text, limit);
+    }
+
+    public IndicatorSummary getSummary() {
+        // Statistics from the running aggregates
+        return repository.getAggregates().getSummary();
+    }
+
+    public synchronized Country add(String code, String name, Double internetUsers, Double adultLiteracyRate) {
+        // Validate and insert a new country
+        checkNewCode(code);
+        checkName(name);
+        checkIndicatorValue("internet users", internetUsers);
+        checkIndicatorValue("literacy", adultLiteracyRate);
+        Country country = new CountryBuilder(code, name)
+                .withInternetUsers(internetUsers)
+                .withAdultLiteracyRate(adultLiteracyRate)
+                .build();
+        repository.save(country);
+        return country;
+    }
+
+    public synchronized CountryWrite put(String code, Long expectedVersion, String name, Double internetUsers,
+                                         Double adultLiteracyRate) {
+        // Validate and insert a country, or replace the name and indicator values of an existing one
+        if (code == null || code.length() != 3) {
+            throw new IllegalArgumentException("Country code must be a 3-character string");
+        }
+        checkName(name);
+        checkIndicatorValue("internet users", internetUsers);
+        checkIndicatorValue("literacy", adultLiteracyRate);
+        Country country = new CountryBuilder(code, name)
+                .withInternetUsers(internetUsers)
+                .withAdultLiteracyRate(adultLiteracyRate)
+                .build();
+        country.setVersion(expectedVersion);
+        return repository.upsert(country);
+    }
+
+    public synchronized Country edit(String code, Long expectedVersion, String newCode, String name,
+                                     Double internetUsers, Double adultLiteracyRate) {
+        // Validate and change an existing country in one transaction; a different newCode renames it.
+        // expectedVersion is the version the caller read (null: no check against the caller's copy)
+        checkExistingCode(code);
+        if (!newCode.equals(code)) {
+            checkNewCode(newCode);
+        }
+        checkName(name);
+        checkIndicatorValue("internet users", internetUsers);
+        checkIndicatorValue("literacy", adultLiteracyRate);
+        Consumer<Country> changes = country -> {
+            country.setName(name);
+            country.setInternetUsers(internetUsers);
+            country.setAdultLiteracyRate(adultLiteracyRate);
+        };
+        if (newCode.equals(code)) {
+            return repository.patch(code, expectedVersion, changes);
+        }
+        return repository.rename(code, newCode, expectedVersion, changes);
+    }
+
+    public synchronized Country patch(String code, Long expectedVersion, Map<String, String> fields) {
+        // Change only the given fields (name, internetUsers, adultLiteracyRate; an empty value clears an indicator)
+        if (!repository.getCodeIndex().contains(code)) {
+            throw new NoSuchElementException("Country not found: " + code);
+        }
+        for (String field : fields.keySet()) {
+            if (!PATCH_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown country field: " + field);
+            }
+        }
+        String name = fields.get("name");
+        Double internetUsers = parseValue(fields.get("internetUsers"));
+        Double adultLiteracyRate = parseValue(fields.get("adultLiteracyRate"));
+        if (fields.containsKey("name")) {
+            checkName(name);
+        }
+        checkIndicatorValue("internet users", internetUsers);
+        checkIndicatorValue("literacy", adultLiteracyRate);
+        return repository.patch(code, expectedVersion, country -> {
+            if (fields.containsKey("name")) {
+                country.setName(name);
+            }
+            if (fields.containsKey("internetUsers")) {
+                country.setInternetUsers(internetUsers);
+            }
+            if (fields.containsKey("adultLiteracyRate")) {
+                country.setAdultLiteracyRate(adultLiteracyRate);
+            }
+        });
+    }
+
+    public synchronized boolean delete(String code) {
+        // Delete a country; false when the code does not exist
+        if (!repository.getCodeIndex().contains(code)) {
+            return false;
+        }
+        repository.delete(repository.findByCode(code));
+        return true;
+    }
+
+    public void checkNewCode(String code) {
+        if (code == null || code.length() != 3 || repository.getCodeIndex().contains(code)) {
+            throw new IllegalArgumentException("Country code must be a new, unique, 3-character string");
+        }
+    }
+
+    public void checkExistingCode(String code) {
+        if (!repository.getCodeIndex().contains(code)) {
+            throw new IllegalArgumentException("Country code must be an existing, unique, 3-character string");
+        }
+    }
+
+    public static void checkName(String name) {
+        if (name == null || name.length() > 32) {
+            throw new IllegalArgumentException("Country name can have a maximum of 32 characters");
+        }
+    }
+
+    public static void checkIndicatorValue(String label, Double value) {
+        // Fits the DECIMAL(11,8) columns (see fitsIndicatorColumn); null means no data
+        if (value == null) {
+            return;
+        }
+        if (!fitsIndicatorColumn(value)) {
+            throw new IllegalArgumentException("Country " + label + " must be a number between -1000 and 1000");
+        }
+        String valueText = value.toString();
+        int digits = valueText.indexOf(".");
+        int decimals = valueText.length() - 1 - digits;
+        if (decimals > 8) {
+            throw new IllegalArgumentException("Country " + label + " can have a maximum of 8 decimals");
+        }
+    }
+
+    public static boolean fitsIndicatorColumn(double value) {
+        // DECIMAL(11,8) leaves 3 integer digits, and holds no NaN or infinity
+        return !Double.isNaN(value) && Math.abs(value) < 1000;
+    }
+
+    public static Double parseValue(String text) {
+        // Missing or empty means no data
+        if (text == null || text.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Indicator values must be numbers: " + text);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+
+// a committed country write: a copy of the stored country, and whether the write inserted it (decided in the
+// write's own transaction, so a concurrent insert cannot make it wrong)
+public class CountryWrite {
+    private final Country country;
+    private final boolean created;
+
+    CountryWrite(Country country, boolean created) {
+        this.country = country;
+        this.created = created;
+    }
+
+    public Country getCountry() {
+        return country;
+    }
+
+    public boolean isCreated() {
+        return created;
+    }
+}
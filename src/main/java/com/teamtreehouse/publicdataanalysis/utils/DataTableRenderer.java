@@ -0,0 +1,62 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.Indicator;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorColumns;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+
+// renders the country data table (code, name, internet users, literacy)
+public class DataTableRenderer {
+    private static final String HEADER = String.format(
+            "%s%n%s%n",
+            String.format("%-10s%-45s%15s%10s", "Code", "Country", "Internet Users", "Literacy"),
+            String.join("", Collections.nCopies(80, "-"))
+    );
+
+    private final Writer writer;
+    private final TableWriter tableWriter;
+
+    public DataTableRenderer(Writer writer) {
+        this.writer = writer;
+        // Same layout as %-10s%-45s%15s%10s
+        this.tableWriter = new TableWriter(writer, -10, -45, 15, 10);
+    }
+
+    public void writeHeader() throws IOException {
+        writer.write(HEADER);
+    }
+
+    public void writeRows(IndicatorColumns table) throws IOException {
+        // Write every row of a columnar table or snapshot
+        for (int row = 0; row < table.getRowCount(); row++) {
+            tableWriter.cell(table.getCode(row)).cell(table.getName(row));
+            writeIndicatorCell(table, Indicator.INTERNET_USERS, row);
+            writeIndicatorCell(table, Indicator.ADULT_LITERACY_RATE, row);
+            tableWriter.endRow();
+        }
+    }
+
+    public void writeRow(Country country) throws IOException {
+        tableWriter.cell(country.getCode())
+                .cell(country.getName())
+                .cell(country.getInternetUsers())
+                .cell(country.getAdultLiteracyRate())
+                .endRow();
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    private void writeIndicatorCell(IndicatorColumns table, Indicator indicator, int row) {
+        // Write an indicator cell, showing missing data as --
+        if (table.isPresent(indicator, row)) {
+            tableWriter.cell(table.getValue(indicator, row));
+        } else {
+            tableWriter.cell("--");
+        }
+    }
+}
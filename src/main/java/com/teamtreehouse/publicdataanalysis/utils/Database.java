@@ -0,0 +1,151 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.config.spi.ConfigurationService;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// builds session factories from hibernate.cfg.xml, and plain JDBC connections for read paths that skip Hibernate
+public class Database {
+    // Started on first use, so callers that only need JDBC never pay for the Hibernate bootstrap
+    private static CompletableFuture<SessionFactory> bootstrap;
+
+    public static synchronized CompletableFuture<SessionFactory> startBootstrap() {
+        // Start building the shared session factory on a background thread (only once per process)
+        if (bootstrap == null) {
+            bootstrap = CompletableFuture.supplyAsync(Database::buildSessionFactory, task -> {
+                Thread thread = new Thread(task, "session-factory-bootstrap");
+                thread.setDaemon(true);
+                thread.start();
+            });
+        }
+        return bootstrap;
+    }
+
+    public static SessionFactory getSessionFactory() {
+        // Shared session factory for the process; waits for the background bootstrap if it is still running
+        CompletableFuture<SessionFactory> future = startBootstrap();
+        long start = StartupTimings.start();
+        boolean waited = !future.isDone();
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // Callers get an exception they can catch and retry (the next call starts a new bootstrap), also when
+            // the bootstrap failed with an Error such as ExceptionInInitializerError
+            forgetBootstrap(future);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new HibernateException("Could not build the session factory: " + e.getCause(), e.getCause());
+        } finally {
+            if (waited) {
+                StartupTimings.record("wait for session factory", start);
+            }
+        }
+    }
+
+    private static synchronized void forgetBootstrap(CompletableFuture<SessionFactory> failed) {
+        if (bootstrap == failed) {
+            bootstrap = null;
+        }
+    }
+
+    public static SessionFactory buildSessionFactory() {
+        // Build reusable session factory
+        return buildSessionFactory(Collections.<String, Object>emptyMap());
+    }
+
+    public static SessionFactory buildSessionFactory(Map<String, ?> settings) {
+        // Build a session factory with settings overriding hibernate.cfg.xml (e.g. hibernate.connection.url)
+        long start = StartupTimings.start();
+        final StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .configure()
+                .applySetting(AvailableSettings.GENERATE_STATISTICS, Metrics.isEnabled())
+                // Statistics are read through Metrics, not dumped to the log after every session
+                .applySetting(AvailableSettings.LOG_SESSION_METRICS, false)
+                .applySettings(settings)
+                .build();
+        StartupTimings.record("service registry", start);
+
+        try {
+            start = StartupTimings.start();
+            Metadata metadata = new MetadataSources(registry).buildMetadata();
+            StartupTimings.record("metadata", start);
+
+            // An explicit hbm2ddl.auto (e.g. create for benchmarks) is handled by Hibernate instead
+            Object hbm2ddl = registry.getService(ConfigurationService.class).getSettings().get(AvailableSettings.HBM2DDL_AUTO);
+            if (hbm2ddl == null) {
+                start = StartupTimings.start();
+                String outcome = SchemaVersionCheck.run(registry, metadata);
+                StartupTimings.record("schema check (" + outcome + ")", start);
+            }
+
+            start = StartupTimings.start();
+            SessionFactory sessionFactory = metadata.buildSessionFactory();
+            StartupTimings.record("session factory", start);
+            return sessionFactory;
+        } catch (RuntimeException e) {
+            // Stops the connection pool threads, so a failed bootstrap does not keep the JVM alive
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    public static Connection openConnection() throws SQLException {
+        // Open a JDBC connection with the connection settings of hibernate.cfg.xml
+        Map<String, String> properties = readConfigurationProperties();
+        String url = properties.get("connection.url");
+        if (url == null) {
+            throw new IllegalStateException("hibernate.cfg.xml does not set connection.url");
+        }
+        return DriverManager.getConnection(
+                url,
+                properties.getOrDefault("connection.username", ""),
+                properties.getOrDefault("connection.password", "")
+        );
+    }
+
+    private static Map<String, String> readConfigurationProperties() {
+        // Read the <property> elements of hibernate.cfg.xml, normalizing names to drop the "hibernate." prefix
+        Map<String, String> properties = new HashMap<>();
+        try (InputStream in = Database.class.getClassLoader().getResourceAsStream("hibernate.cfg.xml")) {
+            if (in == null) {
+                throw new IllegalStateException("hibernate.cfg.xml not found on the classpath");
+            }
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            // The DOCTYPE points at a remote DTD; never fetch it
+            factory.setValidating(false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            NodeList nodes = factory.newDocumentBuilder().parse(in).getElementsByTagName("property");
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Element property = (Element) nodes.item(i);
+                String name = property.getAttribute("name");
+                if (name.startsWith("hibernate.")) {
+                    name = name.substring("hibernate.".length());
+                }
+                properties.put(name, property.getTextContent().trim());
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot read hibernate.cfg.xml: " + e.getMessage(), e);
+        }
+        return properties;
+    }
+}
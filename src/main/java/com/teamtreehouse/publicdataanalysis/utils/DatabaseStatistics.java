@@ -0,0 +1,108 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Hibernate statistics (collected with -Dmetrics.enabled=true) and the country cache hit/miss counters
+public class DatabaseStatistics implements DatabaseStatisticsMXBean {
+    private final Statistics statistics;
+    private final CountryRepository countryRepository;
+
+    public DatabaseStatistics(SessionFactory sessionFactory, CountryRepository countryRepository) {
+        this.statistics = sessionFactory.getStatistics();
+        this.countryRepository = countryRepository;
+    }
+
+    public Map<String, Long> getCounters() {
+        // All counters by label, in display order
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("Queries executed", getQueryExecutionCount());
+        counters.put("Slowest query (ms)", getQueryExecutionMaxTimeMillis());
+        counters.put("Entities loaded", getEntityLoadCount());
+        counters.put("Entities fetched", getEntityFetchCount());
+        counters.put("Entities inserted", getEntityInsertCount());
+        counters.put("Entities updated", getEntityUpdateCount());
+        counters.put("Entities deleted", getEntityDeleteCount());
+        counters.put("Sessions opened", getSessionOpenCount());
+        counters.put("Transactions", getTransactionCount());
+        counters.put("Statements prepared", getPrepareStatementCount());
+        counters.put("Second-level cache hits", getSecondLevelCacheHitCount());
+        counters.put("Second-level cache misses", getSecondLevelCacheMissCount());
+        counters.put("Country cache hits", getCountryCacheHitCount());
+        counters.put("Country cache misses", getCountryCacheMissCount());
+        return counters;
+    }
+
+    @Override
+    public long getQueryExecutionCount() {
+        return statistics.getQueryExecutionCount();
+    }
+
+    @Override
+    public long getQueryExecutionMaxTimeMillis() {
+        return statistics.getQueryExecutionMaxTime();
+    }
+
+    @Override
+    public long getEntityLoadCount() {
+        return statistics.getEntityLoadCount();
+    }
+
+    @Override
+    public long getEntityFetchCount() {
+        return statistics.getEntityFetchCount();
+    }
+
+    @Override
+    public long getEntityInsertCount() {
+        return statistics.getEntityInsertCount();
+    }
+
+    @Override
+    public long getEntityUpdateCount() {
+        return statistics.getEntityUpdateCount();
+    }
+
+    @Override
+    public long getEntityDeleteCount() {
+        return statistics.getEntityDeleteCount();
+    }
+
+    @Override
+    public long getSessionOpenCount() {
+        return statistics.getSessionOpenCount();
+    }
+
+    @Override
+    public long getTransactionCount() {
+        return statistics.getTransactionCount();
+    }
+
+    @Override
+    public long getPrepareStatementCount() {
+        return statistics.getPrepareStatementCount();
+    }
+
+    @Override
+    public long getSecondLevelCacheHitCount() {
+        return statistics.getSecondLevelCacheHitCount();
+    }
+
+    @Override
+    public long getSecondLevelCacheMissCount() {
+        return statistics.getSecondLevelCacheMissCount();
+    }
+
+    @Override
+    public long getCountryCacheHitCount() {
+        return countryRepository.getHitCount();
+    }
+
+    @Override
+    public long getCountryCacheMissCount() {
+        return countryRepository.getMissCount();
+    }
+}
@@ -0,0 +1,32 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+// JMX view of Hibernate statistics and the country cache
+public interface DatabaseStatisticsMXBean {
+    long getQueryExecutionCount();
+
+    long getQueryExecutionMaxTimeMillis();
+
+    long getEntityLoadCount();
+
+    long getEntityFetchCount();
+
+    long getEntityInsertCount();
+
+    long getEntityUpdateCount();
+
+    long getEntityDeleteCount();
+
+    long getSessionOpenCount();
+
+    long getTransactionCount();
+
+    long getPrepareStatementCount();
+
+    long getSecondLevelCacheHitCount();
+
+    long getSecondLevelCacheMissCount();
+
+    long getCountryCacheHitCount();
+
+    long getCountryCacheMissCount();
+}
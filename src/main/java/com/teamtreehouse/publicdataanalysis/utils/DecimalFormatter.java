@@ -0,0 +1,76 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+// fixed-point HALF_UP formatting into a StringBuilder, matching
+// String.format("%.Nf", new BigDecimal(value).setScale(N, RoundingMode.HALF_UP).doubleValue())
+public class DecimalFormatter {
+    private static final int MAX_DECIMALS = 9;
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+    };
+    // Keeps the scaled value small enough that its rounding error cannot move it across a .5 tie
+    private static final double MAX_FAST_SCALED = 1e9;
+    private static final double TIE_MARGIN = 1e-6;
+
+    // String.format uses the default locale, so the fast path only applies when it prints plain ASCII digits
+    private static final boolean ASCII_DIGITS;
+    private static final char DECIMAL_SEPARATOR;
+
+    static {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+        ASCII_DIGITS = symbols.getZeroDigit() == '0';
+        DECIMAL_SEPARATOR = symbols.getDecimalSeparator();
+    }
+
+    public static String format(double value, int decimals) {
+        // Round and format a value to the given number of decimals
+        return append(new StringBuilder(24), value, decimals).toString();
+    }
+
+    public static StringBuilder append(StringBuilder builder, double value, int decimals) {
+        // Round and append a value to the given number of decimals without intermediate objects
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("Decimals must be between 0 and " + MAX_DECIMALS);
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        double scaled = Math.abs(value) * scale;
+        if (!ASCII_DIGITS || !(scaled < MAX_FAST_SCALED)) {
+            // Large values, NaN and infinity (which BigDecimal rejects) take the original path
+            return builder.append(slowFormat(value, decimals));
+        }
+        long units = (long) scaled;
+        double fraction = scaled - units;
+        if (Math.abs(fraction - 0.5) < TIE_MARGIN) {
+            // Too close to a tie to decide from the scaled double; round the exact binary value instead
+            units = new BigDecimal(Math.abs(value)).setScale(decimals, RoundingMode.HALF_UP).unscaledValue().longValue();
+        } else if (fraction > 0.5) {
+            units++;
+        }
+        if (value < 0 && units != 0) {
+            builder.append('-');
+        }
+        builder.append(units / scale);
+        if (decimals > 0) {
+            builder.append(DECIMAL_SEPARATOR);
+            long fractionDigits = units % scale;
+            for (long digit = scale / 10; digit > 1 && fractionDigits < digit; digit /= 10) {
+                builder.append('0');
+            }
+            builder.append(fractionDigits);
+        }
+        return builder;
+    }
+
+    private static String slowFormat(double value, int decimals) {
+        return String.format(
+                "%." + decimals + "f",
+                new BigDecimal(value)
+                        .setScale(decimals, RoundingMode.HALF_UP)
+                        .doubleValue()
+        );
+    }
+}
@@ -0,0 +1,44 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// sorted multiset of doubles (value -> occurrences), so min and max survive removals in O(log n)
+public class DoubleMultiset {
+    private final TreeMap<Double, Integer> occurrences = new TreeMap<>();
+    private long size;
+
+    public void add(double value) {
+        occurrences.merge(value, 1, Integer::sum);
+        size++;
+    }
+
+    public void remove(double value) {
+        Integer count = occurrences.get(value);
+        if (count == null) {
+            throw new IllegalStateException("Value is not in the multiset: " + value);
+        }
+        if (count == 1) {
+            occurrences.remove(value);
+        } else {
+            occurrences.put(value, count - 1);
+        }
+        size--;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // Same conventions as DoubleSummaryStatistics: +Infinity when empty
+    public double getMin() {
+        Map.Entry<Double, Integer> first = occurrences.firstEntry();
+        return first == null ? Double.POSITIVE_INFINITY : first.getKey();
+    }
+
+    // Same conventions as DoubleSummaryStatistics: -Infinity when empty
+    public double getMax() {
+        Map.Entry<Double, Integer> last = occurrences.lastEntry();
+        return last == null ? Double.NEGATIVE_INFINITY : last.getKey();
+    }
+}
@@ -0,0 +1,280 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import org.hibernate.HibernateException;
+import org.hibernate.StaleStateException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// embedded HTTP API over the country data; handlers run on a bounded pool and share the thread-safe CountryService
+//   GET /countries[?format=csv]          all countries
+//   POST /countries                      add (form fields code, name, internetUsers, adultLiteracyRate)
+//   GET|PUT|DELETE /countries/{code}     read, insert or replace (form fields name, internetUsers, adultLiteracyRate), delete
+//   PATCH /countries/{code}              change only the given form fields
+//   PUT and PATCH take an optional version field (the version last read); 409 when the country has changed since
+//   GET /statistics[?format=csv]         indicator statistics and correlation
+public class HttpApiServer {
+    private static final String COUNTRIES_PATH = "/countries";
+    private static final String STATISTICS_PATH = "/statistics";
+    private static final String[] COUNTRY_COLUMNS = {"code", "name", "internetUsers", "adultLiteracyRate", "version"};
+    // Requests queued beyond the busy workers; when full, the accepting thread runs the request (back-pressure)
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private final CountryService countryService;
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+
+    public HttpApiServer(CountryService countryService, InetSocketAddress address, int threads) throws IOException {
+        this.countryService = countryService;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                task -> {
+                    Thread thread = new Thread(task, "http-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.server = HttpServer.create(address, QUEUE_CAPACITY);
+        server.setExecutor(executor);
+        // A context matches every path starting with its prefix, so the handlers check the exact path themselves
+        server.createContext(COUNTRIES_PATH, timed("http.countries", this::handleCountries));
+        server.createContext(STATISTICS_PATH, timed("http.statistics", this::handleStatistics));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop(int delaySeconds) {
+        // Stop accepting requests, give running exchanges up to delaySeconds, then stop the workers
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private static HttpHandler timed(String operation, HttpHandler handler) {
+        // Record the whole exchange, response included, when metrics are enabled
+        return exchange -> {
+            long start = Metrics.start();
+            handler.handle(exchange);
+            Metrics.record(operation, start);
+        };
+    }
+
+    private void handleCountries(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String code = countryCode(path);
+            if (code == null && !path.equals(COUNTRIES_PATH)) {
+                sendError(exchange, 404, "Not found: " + path);
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            if (code == null) {
+                if (method.equals("GET")) {
+                    RecordWriter records = startRecords(exchange, 200, COUNTRY_COLUMNS);
+                    for (Country country : countryService.findAll()) {
+                        writeCountry(records, country);
+                    }
+                    records.finish();
+                } else if (method.equals("POST")) {
+                    Map<String, String> form = readForm(exchange);
+                    Country country = countryService.add(form.get("code"), form.get("name"),
+                            CountryService.parseValue(form.get("internetUsers")),
+                            CountryService.parseValue(form.get("adultLiteracyRate")));
+                    sendCountry(exchange, 201, country);
+                } else {
+                    sendError(exchange, 405, "Method not allowed: " + method);
+                }
+            } else if (method.equals("GET")) {
+                Country country = countryService.findByCode(code);
+                if (country == null) {
+                    sendError(exchange, 404, "Country not found: " + code);
+                } else {
+                    sendCountry(exchange, 200, country);
+                }
+            } else if (method.equals("PUT")) {
+                Map<String, String> form = readForm(exchange);
+                CountryWrite written = countryService.put(code, parseVersion(form.get("version")), form.get("name"),
+                        CountryService.parseValue(form.get("internetUsers")),
+                        CountryService.parseValue(form.get("adultLiteracyRate")));
+                sendCountry(exchange, written.isCreated() ? 201 : 200, written.getCountry());
+            } else if (method.equals("PATCH")) {
+                Map<String, String> form = readForm(exchange);
+                Long version = parseVersion(form.remove("version"));
+                sendCountry(exchange, 200, countryService.patch(code, version, form));
+            } else if (method.equals("DELETE")) {
+                if (countryService.delete(code)) {
+                    exchange.sendResponseHeaders(204, -1);
+                } else {
+                    sendError(exchange, 404, "Country not found: " + code);
+                }
+            } else {
+                sendError(exchange, 405, "Method not allowed: " + method);
+            }
+        } catch (NoSuchElementException e) {
+            sendError(exchange, 404, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (StaleStateException e) {
+            sendError(exchange, 409, "Country was changed by another writer; read it again and retry");
+        } catch (HibernateException e) {
+            sendError(exchange, 500, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStatistics(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if (!path.equals(STATISTICS_PATH)) {
+                sendError(exchange, 404, "Not found: " + path);
+                return;
+            }
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Method not allowed: " + exchange.getRequestMethod());
+                return;
+            }
+            IndicatorSummary summary = countryService.getSummary();
+            RecordWriter records = startRecords(exchange, 200, IndicatorSummary.RECORD_COLUMNS);
+            summary.writeRecords(records);
+            records.finish();
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (HibernateException e) {
+            sendError(exchange, 500, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    static String countryCode(String path) {
+        // The code of a /countries/{code} path, or null for any other path (a non-empty code without '/')
+        String prefix = COUNTRIES_PATH + "/";
+        if (!path.startsWith(prefix) || path.length() == prefix.length() || path.indexOf('/', prefix.length()) >= 0) {
+            return null;
+        }
+        return path.substring(prefix.length());
+    }
+
+    private static RecordWriter startRecords(HttpExchange exchange, int status, String... columns) throws IOException {
+        // Stream records in the format of the format query parameter (json by default)
+        String format = readQuery(exchange).getOrDefault("format", "json");
+        if (!format.equals("csv") && !format.equals("json")) {
+            throw new IllegalArgumentException("Format must be csv or json");
+        }
+        exchange.getResponseHeaders().set("Content-Type",
+                format.equals("csv") ? "text/csv; charset=utf-8" : "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        Writer writer = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+        return RecordWriter.forFormat(format, writer, columns);
+    }
+
+    private static void writeCountry(RecordWriter records, Country country) throws IOException {
+        records.writeRecord(country.getCode(), country.getName(),
+                country.getInternetUsers(), country.getAdultLiteracyRate(), country.getVersion());
+    }
+
+    private static void sendCountry(HttpExchange exchange, int status, Country country) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        Writer writer = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+        RecordWriter.writeJsonObject(writer, COUNTRY_COLUMNS, country.getCode(), country.getName(),
+                country.getInternetUsers(), country.getAdultLiteracyRate(), country.getVersion());
+        writer.write('\n');
+        writer.flush();
+        send(exchange, status, body.toByteArray());
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        Writer writer = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+        RecordWriter.writeJsonObject(writer, new String[] {"error"}, message);
+        writer.write('\n');
+        writer.flush();
+        send(exchange, status, body.toByteArray());
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> readForm(HttpExchange exchange) throws IOException {
+        // Parse an application/x-www-form-urlencoded request body
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return parseParameters(new String(body.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> readQuery(HttpExchange exchange) {
+        String query = exchange.getRequestURI().getRawQuery();
+        return query == null ? new HashMap<>() : parseParameters(query);
+    }
+
+    private static Map<String, String> parseParameters(String encoded) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : encoded.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            parameters.put(decode(name), decode(value));
+        }
+        return parameters;
+    }
+
+    private static String decode(String text) {
+        try {
+            return URLDecoder.decode(text, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Long parseVersion(String text) {
+        // Optional optimistic lock: the version the client last read
+        if (text == null || text.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Version must be a whole number: " + text);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// counts and throughput of one import run
+public class ImportResult {
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    private long rowsRead;
+    private long inserted;
+    private long updated;
+    private long merged;
+    private long rejected;
+    private long elapsedNanos;
+    private final List<String> errors = new ArrayList<>();
+
+    void countRead() {
+        rowsRead++;
+    }
+
+    void countInserted() {
+        inserted++;
+    }
+
+    void countUpdated() {
+        updated++;
+    }
+
+    // Values upserted by the database, which does not report whether each one was new
+    void countMerged(long count) {
+        merged += count;
+    }
+
+    void reject(int lineNumber, String message) {
+        rejected++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add("Line " + lineNumber + ": " + message);
+        }
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getInserted() {
+        return inserted;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public long getMerged() {
+        return merged;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    // First few rejected rows
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : (inserted + updated + merged) * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%d rows read: %d inserted, %d updated, %s%d rejected in %.3f s (%.0f rows/s)",
+                rowsRead, inserted, updated, merged == 0 ? "" : merged + " values merged, ",
+                rejected, elapsedNanos / 1e9, getRowsPerSecond()
+        );
+    }
+}
@@ -0,0 +1,419 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.Indicator;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorAggregate;
+import org.hibernate.LockMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// persistent running sums per indicator and indicator pair, updated in the same transaction as each country write,
+// so statistics are read in O(1); min and max come from ordered multisets rebuilt from one column scan per process.
+// The write methods (serialized by this object's monitor) publish the next summary after each commit, so getSummary
+// takes no lock; at most every statistics.revalidateMillis (default 1000) one reader compares the persisted sums with
+// this process's copy and rescans when another process has written
+public class IndicatorAggregates {
+    private final SessionFactory sessionFactory;
+    // Committed state: aggregate rows by name, and value multisets (one per single aggregate, two per pair)
+    private Map<String, IndicatorAggregate> aggregates;
+    private Map<String, DoubleMultiset[]> multisets;
+    // Set when writes bypassed the aggregates (bulk import): the persisted rows are rebuilt on next use
+    private boolean stale;
+    // Changes of the open write transaction, applied to the committed state only after it commits
+    private final Map<String, IndicatorAggregate> pendingAggregates = new HashMap<>();
+    private final List<Runnable> pendingMultisetChanges = new ArrayList<>();
+    private final int driftCheckInterval = Integer.getInteger("statistics.driftCheckInterval", 1000);
+    private int writesSinceDriftCheck;
+    // Derived from the committed state by the write methods; null until loaded
+    private volatile IndicatorSummary summary;
+    private final long revalidateNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("statistics.revalidateMillis", 1000));
+    private final AtomicLong nextRevalidation = new AtomicLong(System.nanoTime());
+    private long driftCount;
+
+    public IndicatorAggregates(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public synchronized void apply(Session session, Country before, Country after) {
+        // Record a write (before is null for inserts, after is null for deletes) inside the caller's transaction
+        load();
+        for (Indicator indicator : Indicator.values()) {
+            Double oldValue = before == null ? null : indicator.getValue(before);
+            Double newValue = after == null ? null : indicator.getValue(after);
+            if (!Objects.equals(oldValue, newValue)) {
+                String name = nameOf(indicator);
+                IndicatorAggregate aggregate = lockAggregate(session, name);
+                DoubleMultiset values = multisets.get(name)[0];
+                if (oldValue != null) {
+                    aggregate.remove(toDecimal(oldValue), null);
+                    pendingMultisetChanges.add(() -> values.remove(oldValue));
+                }
+                if (newValue != null) {
+                    aggregate.add(toDecimal(newValue), null);
+                    pendingMultisetChanges.add(() -> values.add(newValue));
+                }
+            }
+        }
+        for (Indicator[] pair : pairs()) {
+            Double oldFirst = before == null ? null : pair[0].getValue(before);
+            Double oldSecond = before == null ? null : pair[1].getValue(before);
+            Double newFirst = after == null ? null : pair[0].getValue(after);
+            Double newSecond = after == null ? null : pair[1].getValue(after);
+            boolean wasPaired = oldFirst != null && oldSecond != null;
+            boolean isPaired = newFirst != null && newSecond != null;
+            if (wasPaired == isPaired && Objects.equals(oldFirst, newFirst) && Objects.equals(oldSecond, newSecond)) {
+                continue;
+            }
+            String name = nameOf(pair[0], pair[1]);
+            IndicatorAggregate aggregate = lockAggregate(session, name);
+            DoubleMultiset[] values = multisets.get(name);
+            // A pair only counts while both values are present, so null <-> value edits move it in or out
+            if (wasPaired) {
+                aggregate.remove(toDecimal(oldFirst), toDecimal(oldSecond));
+                pendingMultisetChanges.add(() -> {
+                    values[0].remove(oldFirst);
+                    values[1].remove(oldSecond);
+                });
+            }
+            if (isPaired) {
+                aggregate.add(toDecimal(newFirst), toDecimal(newSecond));
+                pendingMultisetChanges.add(() -> {
+                    values[0].add(newFirst);
+                    values[1].add(newSecond);
+                });
+            }
+        }
+    }
+
+    public synchronized void commitPending() {
+        // Publish the changes recorded by apply() once the caller's transaction has committed
+        aggregates.putAll(pendingAggregates);
+        try {
+            pendingMultisetChanges.forEach(Runnable::run);
+        } catch (IllegalStateException e) {
+            // Another process changed a value this process never saw: the multisets are stale, so the committed
+            // write must not fail here; rescan the columns on next use instead (reads would also find the
+            // persisted sums differing and rescan)
+            aggregates = null;
+            multisets = null;
+        }
+        summary = aggregates == null ? null : summarize();
+        pendingAggregates.clear();
+        pendingMultisetChanges.clear();
+        writesSinceDriftCheck++;
+        if (driftCheckInterval > 0 && writesSinceDriftCheck >= driftCheckInterval) {
+            checkDrift();
+        }
+    }
+
+    public synchronized void discardPending() {
+        // Forget the changes of a transaction that did not commit (no-op after commitPending)
+        pendingAggregates.clear();
+        pendingMultisetChanges.clear();
+    }
+
+    public synchronized void invalidate() {
+        // Rebuild on next use, e.g. after writes that bypass the repository (bulk import)
+        aggregates = null;
+        multisets = null;
+        summary = null;
+        stale = true;
+    }
+
+    public synchronized void rebuild() {
+        // Recompute and persist every aggregate now, e.g. right after a bulk import
+        invalidate();
+        reconcile();
+    }
+
+    public synchronized boolean checkDrift() {
+        // Periodic full recompute; returns false (and repairs the persisted sums) when they had drifted
+        return reconcile();
+    }
+
+    public synchronized long getDriftCount() {
+        return driftCount;
+    }
+
+    public synchronized IndicatorStats getStats(Indicator indicator) {
+        // Statistics of one indicator over the countries that have a value
+        load();
+        return stats(indicator);
+    }
+
+    public synchronized PairedStats getPairedStats(Indicator first, Indicator second) {
+        // Paired statistics over the countries that have both values
+        load();
+        return pairedStats(first, second);
+    }
+
+    public IndicatorSummary getSummary() {
+        // Summary for the statistics view without scanning the country table or taking a lock; the reader that
+        // finds the revalidation interval elapsed checks the persisted sums while the others read on
+        IndicatorSummary current = summary;
+        long due = nextRevalidation.get();
+        if (current == null) {
+            return loadSummary();
+        }
+        if (System.nanoTime() - due >= 0 && nextRevalidation.compareAndSet(due, System.nanoTime() + revalidateNanos)) {
+            return revalidate();
+        }
+        return current;
+    }
+
+    private IndicatorStats stats(Indicator indicator) {
+        String name = nameOf(indicator);
+        IndicatorAggregate aggregate = aggregates.get(name);
+        return toStats(aggregate.getCount(), aggregate.getSumFirst(), aggregate.getSumFirstSquares(),
+                multisets.get(name)[0]);
+    }
+
+    private PairedStats pairedStats(Indicator first, Indicator second) {
+        String name = nameOf(first, second);
+        IndicatorAggregate aggregate = aggregates.get(name);
+        if (aggregate == null) {
+            throw new IllegalArgumentException("No aggregate for indicator pair " + name);
+        }
+        DoubleMultiset[] values = multisets.get(name);
+        long count = aggregate.getCount();
+        double coMoment = 0.0;
+        if (count > 0) {
+            coMoment = aggregate.getSumProducts()
+                    .subtract(aggregate.getSumFirst().multiply(aggregate.getSumSecond())
+                            .divide(BigDecimal.valueOf(count), MathContext.DECIMAL128))
+                    .doubleValue();
+        }
+        return new PairedStats(
+                toStats(count, aggregate.getSumFirst(), aggregate.getSumFirstSquares(), values[0]),
+                toStats(count, aggregate.getSumSecond(), aggregate.getSumSecondSquares(), values[1]),
+                coMoment
+        );
+    }
+
+    private void load() {
+        // The first use in a process scans the indicator columns for the multisets and checks the persisted sums
+        if (aggregates == null) {
+            reconcile();
+        }
+    }
+
+    private synchronized IndicatorSummary loadSummary() {
+        load();
+        if (summary == null) {
+            summary = summarize();
+        }
+        return summary;
+    }
+
+    private synchronized IndicatorSummary revalidate() {
+        // Rescan when the persisted sums differ from the committed state of this process, i.e. another process
+        // wrote since the last scan (one read of the few aggregate rows)
+        if (aggregates == null || !matchesPersisted()) {
+            reconcile();
+        }
+        return summary;
+    }
+
+    private IndicatorSummary summarize() {
+        return new IndicatorSummary(
+                stats(Indicator.INTERNET_USERS),
+                stats(Indicator.ADULT_LITERACY_RATE),
+                pairedStats(Indicator.INTERNET_USERS, Indicator.ADULT_LITERACY_RATE)
+        );
+    }
+
+    private boolean matchesPersisted() {
+        Session session = CountryProjection.openReadOnlySession(sessionFactory);
+        try {
+            @SuppressWarnings("unchecked")
+            List<IndicatorAggregate> persisted = session.createQuery("from IndicatorAggregate").list();
+            int matched = 0;
+            for (IndicatorAggregate aggregate : persisted) {
+                IndicatorAggregate committed = aggregates.get(aggregate.getName());
+                if (committed != null) {
+                    if (!committed.hasSameSums(aggregate)) {
+                        return false;
+                    }
+                    matched++;
+                }
+            }
+            return matched == aggregates.size();
+        } finally {
+            session.close();
+        }
+    }
+
+    private boolean reconcile() {
+        // Compare the persisted sums with a full recompute and overwrite them when they differ
+        writesSinceDriftCheck = 0;
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            // Lock the rows first, in the order apply() locks them: no other process's write can commit between
+            // the recompute and the comparison, and the overwrite cannot deadlock with a concurrent write
+            Map<String, IndicatorAggregate> loaded = new LinkedHashMap<>();
+            for (String name : names()) {
+                IndicatorAggregate aggregate = session.get(IndicatorAggregate.class, name, LockMode.PESSIMISTIC_WRITE);
+                if (aggregate != null) {
+                    loaded.put(name, aggregate);
+                }
+            }
+            Map<String, DoubleMultiset[]> recomputedMultisets = new HashMap<>();
+            Map<String, IndicatorAggregate> recomputed = recompute(session, recomputedMultisets);
+            boolean agrees = true;
+            // Missing rows (first run, new indicator) and bulk imports are expected differences, not drift
+            boolean expected = stale || !loaded.keySet().containsAll(recomputed.keySet());
+            if (!expected) {
+                for (IndicatorAggregate aggregate : recomputed.values()) {
+                    agrees &= aggregate.hasSameSums(loaded.get(aggregate.getName()));
+                }
+                if (!agrees) {
+                    driftCount++;
+                }
+            }
+            Map<String, IndicatorAggregate> current = expected || !agrees ? persist(session, recomputed) : loaded;
+            session.getTransaction().commit();
+            aggregates = current;
+            multisets = recomputedMultisets;
+            summary = summarize();
+            stale = false;
+            return agrees;
+        } finally {
+            session.close();
+        }
+    }
+
+    private Map<String, IndicatorAggregate> recompute(Session session, Map<String, DoubleMultiset[]> multisets) {
+        // Compute every aggregate from scratch, streaming only the indicator columns
+        Indicator[] indicators = Indicator.values();
+        Map<String, IndicatorAggregate> recomputed = new LinkedHashMap<>();
+        for (Indicator indicator : indicators) {
+            recomputed.put(nameOf(indicator), new IndicatorAggregate(nameOf(indicator)));
+            multisets.put(nameOf(indicator), new DoubleMultiset[] {new DoubleMultiset()});
+        }
+        for (Indicator[] pair : pairs()) {
+            String name = nameOf(pair[0], pair[1]);
+            recomputed.put(name, new IndicatorAggregate(name));
+            multisets.put(name, new DoubleMultiset[] {new DoubleMultiset(), new DoubleMultiset()});
+        }
+        StringBuilder select = new StringBuilder("select ");
+        for (int i = 0; i < indicators.length; i++) {
+            select.append(i == 0 ? "" : ", ").append("c.").append(indicators[i].getPropertyName());
+        }
+        ScrollableResults results = session.createQuery(select.append(" from Country c").toString())
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                Object[] row = results.get();
+                for (int i = 0; i < indicators.length; i++) {
+                    if (row[i] != null) {
+                        double value = ((Number) row[i]).doubleValue();
+                        recomputed.get(nameOf(indicators[i])).add(toDecimal(value), null);
+                        multisets.get(nameOf(indicators[i]))[0].add(value);
+                    }
+                }
+                for (Indicator[] pair : pairs()) {
+                    Object first = row[pair[0].ordinal()];
+                    Object second = row[pair[1].ordinal()];
+                    if (first != null && second != null) {
+                        double firstValue = ((Number) first).doubleValue();
+                        double secondValue = ((Number) second).doubleValue();
+                        String name = nameOf(pair[0], pair[1]);
+                        recomputed.get(name).add(toDecimal(firstValue), toDecimal(secondValue));
+                        multisets.get(name)[0].add(firstValue);
+                        multisets.get(name)[1].add(secondValue);
+                    }
+                }
+            }
+        } finally {
+            results.close();
+        }
+        return recomputed;
+    }
+
+    private static Map<String, IndicatorAggregate> persist(Session session, Map<String, IndicatorAggregate> recomputed) {
+        // Insert or overwrite the aggregate rows in the caller's transaction
+        Map<String, IndicatorAggregate> persisted = new LinkedHashMap<>();
+        for (IndicatorAggregate aggregate : recomputed.values()) {
+            persisted.put(aggregate.getName(), (IndicatorAggregate) session.merge(aggregate));
+        }
+        return persisted;
+    }
+
+    private IndicatorAggregate lockAggregate(Session session, String name) {
+        // Row lock serializes concurrent writers; the locked instance is tracked until commit
+        IndicatorAggregate aggregate = pendingAggregates.get(name);
+        if (aggregate == null) {
+            aggregate = session.get(IndicatorAggregate.class, name, LockMode.PESSIMISTIC_WRITE);
+            if (aggregate == null) {
+                throw new IllegalStateException("Indicator aggregate " + name + " is missing");
+            }
+            pendingAggregates.put(name, aggregate);
+        }
+        return aggregate;
+    }
+
+    private static List<String> names() {
+        // Every aggregate name: one per indicator, then one per pair, in declaration order
+        List<String> names = new ArrayList<>();
+        for (Indicator indicator : Indicator.values()) {
+            names.add(nameOf(indicator));
+        }
+        for (Indicator[] pair : pairs()) {
+            names.add(nameOf(pair[0], pair[1]));
+        }
+        return names;
+    }
+
+    private static List<Indicator[]> pairs() {
+        // Every unordered pair of indicators, in declaration order
+        Indicator[] indicators = Indicator.values();
+        List<Indicator[]> pairs = new ArrayList<>();
+        for (int i = 0; i < indicators.length; i++) {
+            for (int j = i + 1; j < indicators.length; j++) {
+                pairs.add(new Indicator[] {indicators[i], indicators[j]});
+            }
+        }
+        return pairs;
+    }
+
+    private static String nameOf(Indicator indicator) {
+        return indicator.getPropertyName();
+    }
+
+    private static String nameOf(Indicator first, Indicator second) {
+        return first.getPropertyName() + "*" + second.getPropertyName();
+    }
+
+    private static BigDecimal toDecimal(double value) {
+        // Shortest decimal that round-trips, i.e. the DECIMAL(11,8) value the double was read from
+        return BigDecimal.valueOf(value);
+    }
+
+    private static IndicatorStats toStats(long count, BigDecimal sum, BigDecimal sumOfSquares, DoubleMultiset values) {
+        // Mean and squared deviations from exact sums, so there is no cancellation error
+        if (count == 0) {
+            return IndicatorStats.fromSums(0, 0.0, 0.0, 0.0, 0.0);
+        }
+        BigDecimal n = BigDecimal.valueOf(count);
+        double mean = sum.divide(n, MathContext.DECIMAL128).doubleValue();
+        double sumOfSquaredDeviations = sumOfSquares
+                .subtract(sum.multiply(sum).divide(n, MathContext.DECIMAL128))
+                .doubleValue();
+        return new IndicatorStats(count, values.getMin(), values.getMax(), mean, sumOfSquaredDeviations);
+    }
+}
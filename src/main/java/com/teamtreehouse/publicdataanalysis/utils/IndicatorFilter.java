@@ -0,0 +1,137 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Indicator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// comparison of one indicator column with a constant, e.g. adultLiteracyRate < 80; rows without data never match
+public class IndicatorFilter {
+    public enum Operator {
+        LESS_OR_EQUAL("<="),
+        GREATER_OR_EQUAL(">="),
+        LESS("<"),
+        GREATER(">"),
+        EQUAL("=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public boolean test(double value, double operand) {
+            switch (this) {
+                case LESS_OR_EQUAL:
+                    return value <= operand;
+                case GREATER_OR_EQUAL:
+                    return value >= operand;
+                case LESS:
+                    return value < operand;
+                case GREATER:
+                    return value > operand;
+                default:
+                    return value == operand;
+            }
+        }
+    }
+
+    // Two-character operators first, so "<=" is not read as "<" followed by "=80"
+    private static final Pattern EXPRESSION = Pattern.compile("\\s*(\\w+)\\s*(<=|>=|<|>|=)\\s*(\\S+)\\s*");
+    private static final Pattern SEPARATOR = Pattern.compile(",|\\s+and\\s+", Pattern.CASE_INSENSITIVE);
+
+    private final Indicator indicator;
+    private final Operator operator;
+    private final double operand;
+
+    public IndicatorFilter(Indicator indicator, Operator operator, double operand) {
+        if (Double.isNaN(operand)) {
+            throw new IllegalArgumentException("Filter values must be numbers");
+        }
+        this.indicator = indicator;
+        this.operator = operator;
+        this.operand = operand;
+    }
+
+    public static List<IndicatorFilter> parseAll(String expressions) {
+        // Parse filters separated by commas or "and"; blank means no filters
+        List<IndicatorFilter> filters = new ArrayList<>();
+        if (expressions.trim().isEmpty()) {
+            return filters;
+        }
+        for (String expression : SEPARATOR.split(expressions)) {
+            filters.add(parse(expression));
+        }
+        return filters;
+    }
+
+    public static IndicatorFilter parse(String expression) {
+        // Parse "<indicator> <operator> <number>", e.g. "internetUsers >= 50"; any unambiguous part of the
+        // property name will do, e.g. "literacy < 80"
+        Matcher matcher = EXPRESSION.matcher(expression);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Filters look like internetUsers >= 50: " + expression.trim());
+        }
+        Indicator indicator = null;
+        for (Indicator candidate : Indicator.values()) {
+            if (candidate.getPropertyName().toLowerCase().contains(matcher.group(1).toLowerCase())) {
+                if (indicator != null) {
+                    throw new IllegalArgumentException("Ambiguous indicator: " + matcher.group(1));
+                }
+                indicator = candidate;
+            }
+        }
+        if (indicator == null) {
+            throw new IllegalArgumentException("Unknown indicator: " + matcher.group(1));
+        }
+        Operator operator = null;
+        for (Operator candidate : Operator.values()) {
+            if (candidate.getSymbol().equals(matcher.group(2))) {
+                operator = candidate;
+            }
+        }
+        try {
+            return new IndicatorFilter(indicator, operator, Double.parseDouble(matcher.group(3)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Filter values must be numbers: " + matcher.group(3));
+        }
+    }
+
+    public Indicator getIndicator() {
+        return indicator;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public double getOperand() {
+        return operand;
+    }
+
+    public boolean matches(Double value) {
+        return value != null && operator.test(value, operand);
+    }
+
+    public String toSql() {
+        // Column compared with a ? parameter bound to the operand; a range on the leading column of its index.
+        // NULLs sort first in H2 indexes, so an upper bound alone would scan every row without data: add a lower one
+        String column = indicator.getPropertyName();
+        String comparison = column + " " + operator.getSymbol() + " ?";
+        if (operator == Operator.LESS || operator == Operator.LESS_OR_EQUAL) {
+            return comparison + " AND " + column + " >= " + -Double.MAX_VALUE;
+        }
+        return comparison;
+    }
+
+    @Override
+    public String toString() {
+        return indicator.getPropertyName() + " " + operator.getSymbol() + " " + operand;
+    }
+}
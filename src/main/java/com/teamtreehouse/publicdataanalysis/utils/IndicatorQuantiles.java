@@ -0,0 +1,79 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+// immutable percentiles of a single indicator column, read from a quantile sketch
+public class IndicatorQuantiles {
+    private static final double[] FRACTIONS = {0.10, 0.25, 0.50, 0.75, 0.90};
+
+    private final long count;
+    private final double p10;
+    private final double p25;
+    private final double median;
+    private final double p75;
+    private final double p90;
+    private final double rankError;
+
+    public IndicatorQuantiles(long count, double p10, double p25, double median, double p75, double p90,
+                              double rankError) {
+        this.count = count;
+        this.p10 = p10;
+        this.p25 = p25;
+        this.median = median;
+        this.p75 = p75;
+        this.p90 = p90;
+        this.rankError = rankError;
+    }
+
+    public static IndicatorQuantiles fromSketch(QuantileSketch sketch) {
+        // Read all percentiles from one sort of the sketch; exact sketches have no rank error
+        double[] quantiles = sketch.getQuantiles(FRACTIONS);
+        return new IndicatorQuantiles(sketch.getCount(), quantiles[0], quantiles[1], quantiles[2], quantiles[3],
+                quantiles[4], sketch.isExact() ? 0.0 : QuantileSketch.getNormalizedRankError(sketch.getK()));
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // Percentiles are NaN when empty
+    public double getP10() {
+        return p10;
+    }
+
+    public double getP25() {
+        return p25;
+    }
+
+    public double getMedian() {
+        return median;
+    }
+
+    public double getP75() {
+        return p75;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getInterquartileRange() {
+        return p75 - p25;
+    }
+
+    // Normalized rank error at 99% confidence: 0.0133 means a reported median lies between the true p48.67 and p51.33
+    public double getRankError() {
+        return rankError;
+    }
+
+    @Override
+    public String toString() {
+        return "IndicatorQuantiles{" +
+                "count=" + count +
+                ", p10=" + p10 +
+                ", p25=" + p25 +
+                ", median=" + median +
+                ", p75=" + p75 +
+                ", p90=" + p90 +
+                ", rankError=" + rankError +
+                '}';
+    }
+}
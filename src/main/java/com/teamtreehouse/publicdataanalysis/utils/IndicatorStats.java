@@ -0,0 +1,71 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+// immutable summary of a single indicator column
+public class IndicatorStats {
+    private final long count;
+    private final double min;
+    private final double max;
+    private final double mean;
+    private final double sumOfSquaredDeviations;
+
+    public IndicatorStats(long count, double min, double max, double mean, double sumOfSquaredDeviations) {
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.sumOfSquaredDeviations = sumOfSquaredDeviations;
+    }
+
+    public static IndicatorStats fromSums(long count, double min, double max, double sum, double sumOfSquares) {
+        // Build statistics from raw sums (e.g. computed by an aggregate query)
+        if (count == 0) {
+            return new IndicatorStats(0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.0, 0.0);
+        }
+        double mean = sum / count;
+        double sumOfSquaredDeviations = Math.max(0.0, sumOfSquares - sum * mean);
+        return new IndicatorStats(count, min, max, mean, sumOfSquaredDeviations);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // Same conventions as DoubleSummaryStatistics: +Infinity when empty
+    public double getMin() {
+        return min;
+    }
+
+    // Same conventions as DoubleSummaryStatistics: -Infinity when empty
+    public double getMax() {
+        return max;
+    }
+
+    // Same conventions as DoubleSummaryStatistics: 0.0 when empty
+    public double getMean() {
+        return mean;
+    }
+
+    public double getSumOfSquaredDeviations() {
+        return sumOfSquaredDeviations;
+    }
+
+    public double getVariance() {
+        // Sample variance (n - 1 denominator)
+        return count < 2 ? Double.NaN : sumOfSquaredDeviations / (count - 1);
+    }
+
+    public double getStdDev() {
+        return Math.sqrt(getVariance());
+    }
+
+    @Override
+    public String toString() {
+        return "IndicatorStats{" +
+                "count=" + count +
+                ", min=" + min +
+                ", max=" + max +
+                ", mean=" + mean +
+                ", variance=" + getVariance() +
+                '}';
+    }
+}
@@ -0,0 +1,202 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.Indicator;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorColumns;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorTable;
+import org.hibernate.Session;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.BitSet;
+import java.util.List;
+
+// statistics for internet users, adult literacy rate and their paired subset
+public class IndicatorSummary {
+    // One aggregate query; nulls are skipped by the aggregates, CASE restricts the paired sums to complete rows
+    private static final String AGGREGATE_SQL = "SELECT " +
+            "COUNT(internetUsers), MIN(internetUsers), MAX(internetUsers), " +
+            "SUM(internetUsers), SUM(internetUsers * internetUsers), " +
+            "COUNT(adultLiteracyRate), MIN(adultLiteracyRate), MAX(adultLiteracyRate), " +
+            "SUM(adultLiteracyRate), SUM(adultLiteracyRate * adultLiteracyRate), " +
+            "COUNT(internetUsers * adultLiteracyRate), " +
+            "MIN(CASE WHEN adultLiteracyRate IS NOT NULL THEN internetUsers END), " +
+            "MAX(CASE WHEN adultLiteracyRate IS NOT NULL THEN internetUsers END), " +
+            "SUM(CASE WHEN adultLiteracyRate IS NOT NULL THEN internetUsers END), " +
+            "SUM(CASE WHEN adultLiteracyRate IS NOT NULL THEN internetUsers * internetUsers END), " +
+            "MIN(CASE WHEN internetUsers IS NOT NULL THEN adultLiteracyRate END), " +
+            "MAX(CASE WHEN internetUsers IS NOT NULL THEN adultLiteracyRate END), " +
+            "SUM(CASE WHEN internetUsers IS NOT NULL THEN adultLiteracyRate END), " +
+            "SUM(CASE WHEN internetUsers IS NOT NULL THEN adultLiteracyRate * adultLiteracyRate END), " +
+            "SUM(internetUsers * adultLiteracyRate) " +
+            "FROM Country";
+
+    // Columns of writeRecords(): a row per indicator, then the pair with its correlation
+    public static final String[] RECORD_COLUMNS = {
+            "indicator", "count", "min", "max", "mean", "stdDev", "correlation"
+    };
+
+    private final IndicatorStats internetUsers;
+    private final IndicatorStats adultLiteracyRate;
+    private final PairedStats paired;
+
+    public IndicatorSummary(IndicatorStats internetUsers, IndicatorStats adultLiteracyRate, PairedStats paired) {
+        this.internetUsers = internetUsers;
+        this.adultLiteracyRate = adultLiteracyRate;
+        this.paired = paired;
+    }
+
+    public static IndicatorSummary fromCountries(List<Country> countries) {
+        // Summarize already loaded countries
+        return fromTable(IndicatorTable.fromCountries(countries));
+    }
+
+    public static IndicatorSummary fromTable(IndicatorColumns table) {
+        // Summarize a columnar table or snapshot; the paired subset is the AND of both validity bitmaps
+        return new IndicatorSummary(
+                Statistics.summarize(table, Indicator.INTERNET_USERS),
+                Statistics.summarize(table, Indicator.ADULT_LITERACY_RATE),
+                Statistics.correlate(table, Indicator.INTERNET_USERS, Indicator.ADULT_LITERACY_RATE)
+        );
+    }
+
+    public static IndicatorSummary fromTable(IndicatorColumns table, BitSet rows) {
+        // Summarize only the selected rows, e.g. those matching a query
+        return new IndicatorSummary(
+                Statistics.summarize(table, Indicator.INTERNET_USERS, rows),
+                Statistics.summarize(table, Indicator.ADULT_LITERACY_RATE, rows),
+                Statistics.correlate(table, Indicator.INTERNET_USERS, Indicator.ADULT_LITERACY_RATE, rows)
+        );
+    }
+
+    public static IndicatorSummary fromDatabase(Session session) {
+        // Summarize with a single aggregate query, without hydrating any Country entity
+        return fromAggregateRow((Object[]) session.createSQLQuery(AGGREGATE_SQL).uniqueResult());
+    }
+
+    public static IndicatorSummary fromDatabase(Connection connection) throws SQLException {
+        // Same aggregate query over plain JDBC, for callers that do not bootstrap Hibernate
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(AGGREGATE_SQL)) {
+            resultSet.next();
+            Object[] row = new Object[resultSet.getMetaData().getColumnCount()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = resultSet.getObject(i + 1);
+            }
+            return fromAggregateRow(row);
+        }
+    }
+
+    public static IndicatorSummary fromDatabase(Connection connection, CountryQuery query) throws SQLException {
+        // Same aggregate query restricted to the rows matching the query's filters
+        try (PreparedStatement statement = connection.prepareStatement(AGGREGATE_SQL + query.toSqlWhere())) {
+            query.bindFilters(statement);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                Object[] row = new Object[resultSet.getMetaData().getColumnCount()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = resultSet.getObject(i + 1);
+                }
+                return fromAggregateRow(row);
+            }
+        }
+    }
+
+    private static IndicatorSummary fromAggregateRow(Object[] row) {
+        IndicatorStats internetUsers = IndicatorStats.fromSums(
+                asLong(row[0]), asDouble(row[1]), asDouble(row[2]), asDouble(row[3]), asDouble(row[4])
+        );
+        IndicatorStats adultLiteracyRate = IndicatorStats.fromSums(
+                asLong(row[5]), asDouble(row[6]), asDouble(row[7]), asDouble(row[8]), asDouble(row[9])
+        );
+        long pairedCount = asLong(row[10]);
+        IndicatorStats pairedInternetUsers = IndicatorStats.fromSums(
+                pairedCount, asDouble(row[11]), asDouble(row[12]), asDouble(row[13]), asDouble(row[14])
+        );
+        IndicatorStats pairedAdultLiteracyRate = IndicatorStats.fromSums(
+                pairedCount, asDouble(row[15]), asDouble(row[16]), asDouble(row[17]), asDouble(row[18])
+        );
+        double coMoment = pairedCount == 0 ? 0.0 : asDouble(row[19]) - asDouble(row[13]) * asDouble(row[17]) / pairedCount;
+        return new IndicatorSummary(
+                internetUsers,
+                adultLiteracyRate,
+                new PairedStats(pairedInternetUsers, pairedAdultLiteracyRate, coMoment)
+        );
+    }
+
+    private static long asLong(Object value) {
+        return value == null ? 0L : ((Number) value).longValue();
+    }
+
+    private static double asDouble(Object value) {
+        return value == null ? 0.0 : ((Number) value).doubleValue();
+    }
+
+    public IndicatorStats getInternetUsers() {
+        return internetUsers;
+    }
+
+    public IndicatorStats getAdultLiteracyRate() {
+        return adultLiteracyRate;
+    }
+
+    public PairedStats getPaired() {
+        return paired;
+    }
+
+    public void writeRecords(RecordWriter records) throws IOException {
+        // Machine-readable form of the statistics view (batch stats, HTTP /statistics)
+        writeRecord(records, "internetUsers", internetUsers);
+        writeRecord(records, "adultLiteracyRate", adultLiteracyRate);
+        records.writeRecord("internetUsers*adultLiteracyRate", paired.getCount(), null, null, null, null,
+                paired.getCount() < 2 ? null : paired.getCorrelation());
+    }
+
+    private static void writeRecord(RecordWriter records, String indicator, IndicatorStats stats) throws IOException {
+        // Empty indicators have no min, max or mean
+        boolean empty = stats.getCount() == 0;
+        records.writeRecord(indicator, stats.getCount(),
+                empty ? null : stats.getMin(),
+                empty ? null : stats.getMax(),
+                empty ? null : stats.getMean(),
+                stats.getCount() < 2 ? null : stats.getStdDev(),
+                null);
+    }
+
+    public boolean agreesWith(IndicatorSummary other, double tolerance) {
+        // Cross-check two summaries (e.g. database vs in-memory) within a relative tolerance
+        return agree(internetUsers, other.internetUsers, tolerance)
+                && agree(adultLiteracyRate, other.adultLiteracyRate, tolerance)
+                && agree(paired.getFirst(), other.paired.getFirst(), tolerance)
+                && agree(paired.getSecond(), other.paired.getSecond(), tolerance)
+                && agree(paired.getCorrelation(), other.paired.getCorrelation(), tolerance);
+    }
+
+    private static boolean agree(IndicatorStats a, IndicatorStats b, double tolerance) {
+        return a.getCount() == b.getCount()
+                && agree(a.getMin(), b.getMin(), tolerance)
+                && agree(a.getMax(), b.getMax(), tolerance)
+                && agree(a.getMean(), b.getMean(), tolerance)
+                && agree(a.getVariance(), b.getVariance(), tolerance);
+    }
+
+    private static boolean agree(double a, double b, double tolerance) {
+        if (Double.isNaN(a) || Double.isNaN(b) || Double.isInfinite(a) || Double.isInfinite(b)) {
+            return Double.compare(a, b) == 0;
+        }
+        return Math.abs(a - b) <= tolerance * Math.max(1.0, Math.max(Math.abs(a), Math.abs(b)));
+    }
+
+    @Override
+    public String toString() {
+        return "IndicatorSummary{" +
+                "internetUsers=" + internetUsers +
+                ", adultLiteracyRate=" + adultLiteracyRate +
+                ", paired=" + paired +
+                '}';
+    }
+}
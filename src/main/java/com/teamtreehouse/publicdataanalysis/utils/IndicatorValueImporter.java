@@ -0,0 +1,152 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+// streaming importer for World Bank panel CSV files (one row per country and indicator, one column per year)
+public class IndicatorValueImporter {
+    // Values written per transaction, sent to H2 as JDBC batches of BATCH_SIZE
+    private static final int VALUES_PER_TRANSACTION = 50000;
+    private static final int BATCH_SIZE = 500;
+    private static final String MERGE_SQL = "MERGE INTO IndicatorValue (countryCode, indicatorCode, year, value)"
+            + " KEY (countryCode, indicatorCode, year) VALUES (?, ?, ?, ?)";
+
+    private final SessionFactory sessionFactory;
+
+    public IndicatorValueImporter(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public static boolean isPanelFile(Path path) throws IOException {
+        // A panel file is a CSV whose header has an Indicator Code column
+        if (!path.getFileName().toString().toLowerCase().endsWith(".csv")) {
+            return false;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    return line.toLowerCase().contains("indicator code");
+                }
+            }
+        }
+        return false;
+    }
+
+    public ImportResult importFile(Path path) throws IOException {
+        // Parse the file line by line and upsert every non-empty (country, indicator, year) value
+        ImportResult result = new ImportResult();
+        long start = System.nanoTime();
+        Session session = sessionFactory.openSession();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+                int countryCodeColumn = -1;
+                int indicatorCodeColumn = -1;
+                int[] years = null;
+                int lineNumber = 0;
+                long valuesInTransaction = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                        line = line.substring(1);
+                    }
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    String[] fields = CountryImporter.splitCsv(line);
+                    if (years == null) {
+                        // Header: Country Name, Country Code, Indicator Name, Indicator Code, 1960, 1961, ...
+                        years = new int[fields.length];
+                        for (int i = 0; i < fields.length; i++) {
+                            String header = fields[i].toLowerCase();
+                            years[i] = header.matches("\\d{4}") ? Integer.parseInt(header) : -1;
+                            if (header.equals("country code")) {
+                                countryCodeColumn = i;
+                            } else if (header.equals("indicator code")) {
+                                indicatorCodeColumn = i;
+                            }
+                        }
+                        if (countryCodeColumn < 0 || indicatorCodeColumn < 0) {
+                            throw new IllegalArgumentException("Header must contain Country Code and Indicator Code columns");
+                        }
+                        continue;
+                    }
+                    result.countRead();
+                    String countryCode = countryCodeColumn < fields.length ? fields[countryCodeColumn] : "";
+                    String indicatorCode = indicatorCodeColumn < fields.length ? fields[indicatorCodeColumn] : "";
+                    if (countryCode.length() != 3 || indicatorCode.isEmpty() || indicatorCode.length() > 32) {
+                        result.reject(lineNumber, "Invalid country or indicator code: " + countryCode + ", " + indicatorCode);
+                        continue;
+                    }
+                    for (int i = 0; i < fields.length && i < years.length; i++) {
+                        if (years[i] < 0 || fields[i].isEmpty() || fields[i].equals("..")) {
+                            continue;
+                        }
+                        double value;
+                        try {
+                            value = Double.parseDouble(fields[i]);
+                        } catch (NumberFormatException e) {
+                            result.reject(lineNumber, "Value is not a number: " + fields[i]);
+                            continue;
+                        }
+                        batch.add(new Object[] {countryCode, indicatorCode, years[i], value});
+                        if (batch.size() == BATCH_SIZE) {
+                            valuesInTransaction += flush(session, batch, result);
+                        }
+                    }
+                    if (valuesInTransaction >= VALUES_PER_TRANSACTION) {
+                        valuesInTransaction += flush(session, batch, result);
+                        transaction.commit();
+                        transaction = session.beginTransaction();
+                        valuesInTransaction = 0;
+                    }
+                }
+                flush(session, batch, result);
+                transaction.commit();
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            }
+        } finally {
+            session.close();
+        }
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    private static int flush(Session session, List<Object[]> batch, ImportResult result) {
+        // Send the pending values as one JDBC batch of MERGE statements
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int size = batch.size();
+        session.doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(MERGE_SQL)) {
+                for (Object[] row : batch) {
+                    statement.setString(1, (String) row[0]);
+                    statement.setString(2, (String) row[1]);
+                    statement.setInt(3, (Integer) row[2]);
+                    statement.setDouble(4, (Double) row[3]);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+        result.countMerged(size);
+        batch.clear();
+        return size;
+    }
+}
@@ -0,0 +1,198 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.IndicatorValue;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.DoubleConsumer;
+import java.util.function.Supplier;
+
+// typed queries over the (countryCode, indicatorCode, year, value) panel; statistics stream one row at a time
+public class IndicatorValueRepository {
+    private final SessionFactory sessionFactory;
+
+    public IndicatorValueRepository(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public List<IndicatorValue> findValues(String indicatorCode, int year) {
+        // Get one indicator's values across countries for a year
+        return findValues(indicatorCode, year, year);
+    }
+
+    public List<IndicatorValue> findValues(String indicatorCode, int fromYear, int toYear) {
+        // Get one indicator's values across countries for a range of years
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            @SuppressWarnings("unchecked")
+            List<IndicatorValue> values = session.createQuery(
+                    "from IndicatorValue v where v.id.indicatorCode = :indicatorCode"
+                            + " and v.id.year between :fromYear and :toYear"
+                            + " order by v.id.year, v.id.countryCode"
+            )
+                    .setParameter("indicatorCode", indicatorCode)
+                    .setParameter("fromYear", fromYear)
+                    .setParameter("toYear", toYear)
+                    .list();
+            return values;
+        } finally {
+            session.close();
+        }
+    }
+
+    public List<String> findIndicatorCodes() {
+        // Get the indicators that have at least one value
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> indicatorCodes = session.createQuery(
+                    "select distinct v.id.indicatorCode from IndicatorValue v order by v.id.indicatorCode"
+            ).list();
+            return indicatorCodes;
+        } finally {
+            session.close();
+        }
+    }
+
+    public IndicatorStats summarize(String indicatorCode, int fromYear, int toYear) {
+        // Calculate statistics over all of an indicator's values in a range of years
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        for (StatisticsAccumulator yearAccumulator
+                : accumulateByYear(indicatorCode, fromYear, toYear, StatisticsAccumulator::new).values()) {
+            accumulator.combine(yearAccumulator);
+        }
+        return accumulator.toStats();
+    }
+
+    public SortedMap<Integer, IndicatorStats> summarizeByYear(String indicatorCode, int fromYear, int toYear) {
+        // Calculate statistics of an indicator for each year in a range
+        SortedMap<Integer, IndicatorStats> statsByYear = new TreeMap<>();
+        accumulateByYear(indicatorCode, fromYear, toYear, StatisticsAccumulator::new)
+                .forEach((year, accumulator) -> statsByYear.put(year, accumulator.toStats()));
+        return statsByYear;
+    }
+
+    public IndicatorQuantiles quantiles(String indicatorCode, int fromYear, int toYear) {
+        // Estimate percentiles over all of an indicator's values in a range of years by merging the yearly sketches
+        QuantileSketch sketch = new QuantileSketch();
+        for (QuantileSketch yearSketch : accumulateByYear(indicatorCode, fromYear, toYear, QuantileSketch::new).values()) {
+            sketch.merge(yearSketch);
+        }
+        return IndicatorQuantiles.fromSketch(sketch);
+    }
+
+    public SortedMap<Integer, IndicatorQuantiles> quantilesByYear(String indicatorCode, int fromYear, int toYear) {
+        // Estimate percentiles of an indicator for each year in a range, with bounded memory per year
+        SortedMap<Integer, IndicatorQuantiles> quantilesByYear = new TreeMap<>();
+        accumulateByYear(indicatorCode, fromYear, toYear, QuantileSketch::new)
+                .forEach((year, sketch) -> quantilesByYear.put(year, IndicatorQuantiles.fromSketch(sketch)));
+        return quantilesByYear;
+    }
+
+    public SortedMap<Integer, PairedStats> correlateByYear(
+            String indicatorCodeA, String indicatorCodeB, int fromYear, int toYear) {
+        // Calculate paired statistics of two indicators for each year, over countries that have both values
+        SortedMap<Integer, PairedStatisticsAccumulator> accumulators = new TreeMap<>();
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            ScrollableResults results = session.createQuery(
+                    "select a.id.year, a.value, b.value from IndicatorValue a, IndicatorValue b"
+                            + " where a.id.indicatorCode = :indicatorCodeA and a.id.year between :fromYear and :toYear"
+                            + " and b.id.countryCode = a.id.countryCode and b.id.indicatorCode = :indicatorCodeB"
+                            + " and b.id.year = a.id.year"
+            )
+                    .setParameter("indicatorCodeA", indicatorCodeA)
+                    .setParameter("indicatorCodeB", indicatorCodeB)
+                    .setParameter("fromYear", fromYear)
+                    .setParameter("toYear", toYear)
+                    .setReadOnly(true)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                while (results.next()) {
+                    accumulators.computeIfAbsent(results.getInteger(0), year -> new PairedStatisticsAccumulator())
+                            .accept(results.getDouble(1), results.getDouble(2));
+                }
+            } finally {
+                results.close();
+            }
+        } finally {
+            session.close();
+        }
+        SortedMap<Integer, PairedStats> statsByYear = new TreeMap<>();
+        accumulators.forEach((year, accumulator) -> statsByYear.put(year, accumulator.toStats()));
+        return statsByYear;
+    }
+
+    public double[][] findPairedValues(String indicatorCodeA, String indicatorCodeB, int fromYear, int toYear) {
+        // Get the (A, B) values of every country and year in a range that has both, as two parallel columns
+        double[] valuesA = new double[1024];
+        double[] valuesB = new double[1024];
+        int count = 0;
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            ScrollableResults results = session.createQuery(
+                    "select a.value, b.value from IndicatorValue a, IndicatorValue b"
+                            + " where a.id.indicatorCode = :indicatorCodeA and a.id.year between :fromYear and :toYear"
+                            + " and b.id.countryCode = a.id.countryCode and b.id.indicatorCode = :indicatorCodeB"
+                            + " and b.id.year = a.id.year"
+            )
+                    .setParameter("indicatorCodeA", indicatorCodeA)
+                    .setParameter("indicatorCodeB", indicatorCodeB)
+                    .setParameter("fromYear", fromYear)
+                    .setParameter("toYear", toYear)
+                    .setReadOnly(true)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                while (results.next()) {
+                    if (count == valuesA.length) {
+                        valuesA = Arrays.copyOf(valuesA, count * 2);
+                        valuesB = Arrays.copyOf(valuesB, count * 2);
+                    }
+                    valuesA[count] = results.getDouble(0);
+                    valuesB[count] = results.getDouble(1);
+                    count++;
+                }
+            } finally {
+                results.close();
+            }
+        } finally {
+            session.close();
+        }
+        return new double[][] {Arrays.copyOf(valuesA, count), Arrays.copyOf(valuesB, count)};
+    }
+
+    private <T extends DoubleConsumer> SortedMap<Integer, T> accumulateByYear(
+            String indicatorCode, int fromYear, int toYear, Supplier<T> accumulatorFactory) {
+        // Stream (year, value) pairs through per-year accumulators without building entities
+        SortedMap<Integer, T> accumulators = new TreeMap<>();
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            ScrollableResults results = session.createQuery(
+                    "select v.id.year, v.value from IndicatorValue v"
+                            + " where v.id.indicatorCode = :indicatorCode and v.id.year between :fromYear and :toYear"
+            )
+                    .setParameter("indicatorCode", indicatorCode)
+                    .setParameter("fromYear", fromYear)
+                    .setParameter("toYear", toYear)
+                    .setReadOnly(true)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                while (results.next()) {
+                    accumulators.computeIfAbsent(results.getInteger(0), year -> accumulatorFactory.get())
+                            .accept(results.getDouble(1));
+                }
+            } finally {
+                results.close();
+            }
+        } finally {
+            session.close();
+        }
+        return accumulators;
+    }
+}
@@ -0,0 +1,76 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+
+// one committed change read back from the ChangeJournal, with the offset to resume replay after it
+public class JournalRecord {
+    public enum Type {
+        ADD,
+        UPDATE,
+        DELETE,
+        // Writes bypassed the journal (bulk import): consumers must rebuild from the table
+        RESET
+    }
+
+    private final long sequence;
+    private final long timestampMillis;
+    private final Type type;
+    private final String code;
+    private final Country country;
+    private final long offset;
+    private final long nextOffset;
+
+    public JournalRecord(long sequence, long timestampMillis, Type type, String code, Country country,
+                         long offset, long nextOffset) {
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.type = type;
+        this.code = code;
+        this.country = country;
+        this.offset = offset;
+        this.nextOffset = nextOffset;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    // The code before the change; an UPDATE whose country has another code was a rename. Null for RESET
+    public String getCode() {
+        return code;
+    }
+
+    // The country as committed, with its new version; null for DELETE and RESET
+    public Country getCountry() {
+        return country;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    // Pass to ChangeJournal.replay() to continue after this record
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalRecord{" +
+                "sequence=" + sequence +
+                ", timestampMillis=" + timestampMillis +
+                ", type=" + type +
+                ", code='" + code + '\'' +
+                ", country=" + country +
+                ", offset=" + offset +
+                '}';
+    }
+}
@@ -0,0 +1,95 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// HDR-style latency histogram in nanoseconds: values below 128 get exact buckets, larger values log-linear
+// buckets of 64 per power of two, so any recorded value is reported within 1/64 (1.6%) over the whole long range
+// in a fixed 29 KB; recording is lock-free and safe from any thread
+public class LatencyHistogram implements LatencyHistogramMXBean {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 2) * SUB_BUCKET_HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        // Negative durations (clock adjustments) count as zero
+        long value = Math.max(0L, nanos);
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public long getValueAtPercentile(double percentile) {
+        // Highest value of the bucket holding the nearest-rank percentile (0 < percentile <= 100); 0 when empty
+        long total = getCount();
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            seen += counts.get(index);
+            if (seen >= rank) {
+                return Math.min(highestValue(index), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long total = getCount();
+        return total == 0 ? 0.0 : sum.sum() / 1e6 / total;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return getValueAtPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return getMaxNanos() / 1e6;
+    }
+
+    private static int bucketIndex(long value) {
+        // Values below SUB_BUCKET_COUNT index directly; above, the top SUB_BUCKET_BITS bits select the bucket
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return magnitude * SUB_BUCKET_HALF + (int) (value >>> magnitude);
+    }
+
+    private static long highestValue(int index) {
+        // Largest value that maps to a bucket (inverse of bucketIndex)
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int magnitude = index / SUB_BUCKET_HALF - 1;
+        long lowest = (long) (index % SUB_BUCKET_HALF + SUB_BUCKET_HALF) << magnitude;
+        return lowest + (1L << magnitude) - 1;
+    }
+}
@@ -0,0 +1,14 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+// JMX view of one operation's latency histogram
+public interface LatencyHistogramMXBean {
+    long getCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+}
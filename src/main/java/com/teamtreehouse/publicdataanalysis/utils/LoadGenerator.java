@@ -0,0 +1,155 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+// closed-loop HTTP GET load: each thread sends the next request as soon as the previous one completes (keep-alive)
+public class LoadGenerator {
+    private final URL url;
+    private final int threads;
+    private final long durationNanos;
+
+    public LoadGenerator(URL url, int threads, double seconds) {
+        if (threads < 1 || seconds <= 0) {
+            throw new IllegalArgumentException("Threads and seconds must be positive");
+        }
+        this.url = url;
+        this.threads = threads;
+        this.durationNanos = (long) (seconds * 1e9);
+    }
+
+    public Result run() throws InterruptedException {
+        // Run all threads for the configured duration and merge their latencies
+        List<Worker> workers = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(start);
+            worker.setName("load-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        long startNanos = System.nanoTime();
+        for (Worker worker : workers) {
+            worker.deadline = startNanos + durationNanos;
+        }
+        start.countDown();
+        long errors = 0;
+        int requests = 0;
+        for (Worker worker : workers) {
+            worker.join();
+            errors += worker.errors;
+            requests += worker.count;
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long[] latencies = new long[requests];
+        int offset = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+            offset += worker.count;
+        }
+        Arrays.sort(latencies);
+        return new Result(requests, errors, seconds, latencies);
+    }
+
+    private class Worker extends Thread {
+        private final CountDownLatch start;
+        private volatile long deadline;
+        private long[] latencies = new long[1 << 14];
+        private int count;
+        private long errors;
+        private final byte[] buffer = new byte[8192];
+
+        private Worker(CountDownLatch start) {
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            while (System.nanoTime() < deadline) {
+                long requestStart = System.nanoTime();
+                boolean ok = request();
+                long latency = System.nanoTime() - requestStart;
+                if (!ok) {
+                    errors++;
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = latency;
+            }
+        }
+
+        private boolean request() {
+            // Read the whole body so the connection goes back to the keep-alive cache
+            try {
+                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                int status = connection.getResponseCode();
+                InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+                if (in != null) {
+                    try {
+                        while (in.read(buffer) > 0) {
+                            // discard
+                        }
+                    } finally {
+                        in.close();
+                    }
+                }
+                return status < 400;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    // throughput and latency percentiles of one run
+    public static class Result {
+        private final int requests;
+        private final long errors;
+        private final double seconds;
+        private final long[] sortedLatencies;
+
+        private Result(int requests, long errors, double seconds, long[] sortedLatencies) {
+            this.requests = requests;
+            this.errors = errors;
+            this.seconds = seconds;
+            this.sortedLatencies = sortedLatencies;
+        }
+
+        public int getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        public double getRequestsPerSecond() {
+            return seconds > 0 ? requests / seconds : 0.0;
+        }
+
+        public double getLatencyMillis(double percentile) {
+            // Nearest-rank percentile (0 < percentile <= 100)
+            if (sortedLatencies.length == 0) {
+                return Double.NaN;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+            return sortedLatencies[Math.max(0, Math.min(sortedLatencies.length, rank) - 1)] / 1e6;
+        }
+    }
+}
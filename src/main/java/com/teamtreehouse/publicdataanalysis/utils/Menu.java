@@ -1,116 +1,562 @@
 package com.teamtreehouse.publicdataanalysis.utils;
 
 import com.teamtreehouse.publicdataanalysis.model.Country;
-import com.teamtreehouse.publicdataanalysis.model.CountryBuilder;
-import org.hibernate.Criteria;
+import com.teamtreehouse.publicdataanalysis.model.Indicator;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorTable;
+import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
-import org.hibernate.boot.MetadataSources;
-import org.hibernate.boot.registry.StandardServiceRegistry;
-import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.StaleStateException;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
 
 public class Menu {
     private static final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(System.in));
-    private static final SessionFactory sessionFactory = buildSessionFactory();
+    // Matches listed by the search option and the code prompts
+    private static final int SEARCH_LIMIT = 10;
 
-    private static SessionFactory buildSessionFactory() {
-        // Build reusable session factory
-        final StandardServiceRegistry registry = new StandardServiceRegistryBuilder().configure().build();
-        return new MetadataSources(registry).buildMetadata().buildSessionFactory();
+    // Built by the first database operation, which waits for the background session factory bootstrap; built
+    // outside a static initializer, so a failure reaches that operation as an exception and the next one retries
+    private static Services services;
+    // Opened at startup by openJournal(), so a journal held by another process stops the menu before any change
+    private static ChangeJournal journal;
+
+    private static class Services {
+        private final SessionFactory sessionFactory;
+        private final CountryRepository countryRepository;
+        private final IndicatorValueRepository indicatorValueRepository;
+        private final CountryService countryService;
+        private final DatabaseStatistics databaseStatistics;
+
+        private Services() {
+            sessionFactory = Database.getSessionFactory();
+            countryRepository = new CountryRepository(sessionFactory, journal);
+            indicatorValueRepository = new IndicatorValueRepository(sessionFactory);
+            countryService = new CountryService(countryRepository);
+            databaseStatistics = Metrics.register(new DatabaseStatistics(sessionFactory, countryRepository));
+        }
+    }
+
+    public static void openJournal() {
+        // Open the change journal the menu's writes are appended to (-Djournal.file=none to run without it)
+        journal = ChangeJournal.openDefault();
+    }
+
+    private static synchronized Services services() {
+        if (services == null) {
+            services = new Services();
+        }
+        return services;
     }
 
     public static void viewDataTable() {
         // View data table
-        List<Country> countries = getCountries();
+        IndicatorTable table = getTable(true);
+        long start = Metrics.start();
+        DataTableRenderer renderer = new DataTableRenderer(newOutputWriter());
+        try {
+            renderer.writeHeader();
+            renderer.writeRows(table);
+            renderer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Metrics.record("render.dataTable", start);
+    }
+
+    public static boolean viewDataTablePages() throws IOException, IllegalArgumentException {
+        // View data table one page at a time, streaming from the database
+        System.out.print("Enter page size (default 20): ");
+        String pageSizeText = bufferedReader.readLine().trim();
+        int pageSize = pageSizeText.isEmpty() ? 20 : Integer.parseInt(pageSizeText);
+        System.out.print("Sort by (code, name, internet, literacy; default code): ");
+        CountryPager.SortColumn sortColumn = parseSortColumn(bufferedReader.readLine().trim());
+        CountryPager pager = new CountryPager(services().sessionFactory, sortColumn, pageSize);
+        System.out.print("Start after code (blank for first page): ");
+        String startAfterCode = bufferedReader.readLine().trim();
+        if (!startAfterCode.isEmpty()) {
+            pager.startAfter(startAfterCode);
+        }
+
+        PrintWriter out = newOutputWriter();
+        DataTableRenderer renderer = new DataTableRenderer(out);
+        int pageNumber = 1;
+        while (pager.hasNextPage()) {
+            List<Country> page = pager.nextPage();
+            if (page.isEmpty()) {
+                break;
+            }
+            out.printf("%nPage %d%n", pageNumber++);
+            renderer.writeHeader();
+            for (Country country : page) {
+                renderer.writeRow(country);
+            }
+            renderer.flush();
+            if (!pager.hasNextPage()) {
+                break;
+            }
+            System.out.print("Press Enter for the next page or q to stop: ");
+            String answer = bufferedReader.readLine();
+            if (answer == null || answer.trim().equalsIgnoreCase("q")) {
+                break;
+            }
+        }
+        System.out.printf("%nEnd of data table%n");
+        return true;
+    }
+
+    public static boolean queryCountries() throws IOException, IllegalArgumentException {
+        // Filter, sort and limit the countries; the statistics cover every matching country, not only the rows shown
+        System.out.print("Enter filters (e.g. literacy < 80, internet >= 50; blank for none): ");
+        CountryQuery query = new CountryQuery();
+        IndicatorFilter.parseAll(bufferedReader.readLine()).forEach(query::where);
+        System.out.print("Sort by (code, name, internet, literacy; add desc for descending; default code): ");
+        String sortText = bufferedReader.readLine().trim().toLowerCase();
+        boolean descending = sortText.equals("desc") || sortText.endsWith(" desc");
+        if (descending) {
+            sortText = sortText.substring(0, sortText.length() - "desc".length()).trim();
+        }
+        query.orderBy(parseSortColumn(sortText), descending);
+        System.out.print("Enter limit (default 20): ");
+        String limitText = bufferedReader.readLine().trim();
+        query.limit(limitText.isEmpty() ? 20 : Integer.parseInt(limitText));
+
+        CountryQueryResult result = runQuery(query);
+        PrintWriter out = newOutputWriter();
+        DataTableRenderer renderer = new DataTableRenderer(out);
+        try {
+            renderer.writeHeader();
+            for (Country country : result.getRows()) {
+                renderer.writeRow(country);
+            }
+            renderer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.printf("%n%d of %d matching countries (%s, %.1f ms)%n%n", result.getRows().size(),
+                result.getMatchCount(), result.getPlan().name().toLowerCase(), result.getElapsedNanos() / 1e6);
         System.out.println(String.format(
                 "%s%n%s",
-                String.format("%-10s%-45s%15s%10s", "Code", "Country", "Internet Users", "Literacy"),
+                String.format("%-20s%15s%15s%15s%15s", "Indicator", "Min", "Max", "Count", "Average"),
                 String.join("", Collections.nCopies(80, "-"))
         ));
-        countries.stream().forEach(
-                country -> {
-                    System.out.println(
-                            String.format(
-                                    "%-10s%-45s%15s%10s",
-                                    country.getCode(),
-                                    country.getName(),
-                                    country.getInternetUsers() == null ? "--" : roundUpAndFormat(country.getInternetUsers()),
-                                    country.getAdultLiteracyRate() == null ? "--" : roundUpAndFormat(country.getAdultLiteracyRate())
-                            )
-                    );
+        TableWriter tableWriter = new TableWriter(out, -20, 15, 15, 15, 15);
+        try {
+            writeStatisticsRow(tableWriter, "Internet Users", result.getSummary().getInternetUsers());
+            writeStatisticsRow(tableWriter, "Adult Literacy Rate", result.getSummary().getAdultLiteracyRate());
+            tableWriter.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.printf("%n* Correlation: %s%n", roundUpAndFormat(definedOrNull(result.getSummary().getPaired().getCorrelation())));
+        return true;
+    }
+
+    private static CountryQueryResult runQuery(CountryQuery query) {
+        // -Dquery.plan=auto (default) pushes filtered queries down to H2, whose indexes make them independent of the
+        // table size, and runs unfiltered ones over the country cache once it is loaded; database and memory force
+        // a plan. A failed database query falls back to memory
+        String plan = System.getProperty("query.plan", "auto");
+        boolean inMemory = plan.equals("memory")
+                || (plan.equals("auto") && query.getFilters().isEmpty() && services().countryRepository.isFullyLoaded());
+        long start = Metrics.start();
+        if (!inMemory) {
+            try {
+                Session session = services().sessionFactory.openSession();
+                try {
+                    CountryQueryResult result = session.doReturningWork(
+                            connection -> CountryQueryEngine.execute(connection, query));
+                    Metrics.record("query.database", start);
+                    return result;
+                } finally {
+                    session.close();
                 }
-        );
+            } catch (HibernateException e) {
+                System.out.printf("Database query failed (%s), falling back to the in-memory query%n", e.getMessage());
+            }
+        }
+        CountryQueryResult result = CountryQueryEngine.execute(getTable(true), query);
+        Metrics.record("query.memory", start);
+        return result;
+    }
+
+    public static boolean searchCountries() throws IOException, IllegalArgumentException {
+        // Find countries by part of their code or name, tolerating typos
+        System.out.print("Enter code or name (e.g. united, germny): ");
+        String text = bufferedReader.readLine().trim();
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Enter part of a code or name");
+        }
+        long start = System.nanoTime();
+        List<CountryMatch> matches = services().countryService.search(text, SEARCH_LIMIT);
+        long elapsedNanos = System.nanoTime() - start;
+        printMatches(matches);
+        System.out.printf("%n%d matching countries (%.3f ms)%n", matches.size(), elapsedNanos / 1e6);
+        return true;
+    }
+
+    private static CountryPager.SortColumn parseSortColumn(String text) {
+        // Map a sort option to a column
+        switch (text.toLowerCase()) {
+            case "":
+            case "code":
+                return CountryPager.SortColumn.CODE;
+            case "name":
+            case "country":
+                return CountryPager.SortColumn.NAME;
+            case "internet":
+            case "internet users":
+                return CountryPager.SortColumn.INTERNET_USERS;
+            case "literacy":
+                return CountryPager.SortColumn.ADULT_LITERACY_RATE;
+            default:
+                throw new IllegalArgumentException("Sort column must be one of code, name, internet or literacy");
+        }
+    }
+
+    private static PrintWriter newOutputWriter() {
+        // Buffer a whole table in one writer instead of flushing System.out on every row
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
     }
 
     public static void viewStatistics() {
         // View statistics
-        List<Country> countries = getCountries();
-
-        // Calculate individual statistics
-        List<Double> allInternetUsers = countries.stream()
-                .filter(country -> country.getInternetUsers() != null)
-                .map(country -> country.getInternetUsers())
-                .collect(Collectors.toList());
-        Map<String, Double> allInternetUsersStats = Statistics.calculateStatistics(allInternetUsers);
-        List<Double> allAdultLiteracyRates = countries.stream()
-                .filter(country -> country.getAdultLiteracyRate() != null)
-                .map(country -> country.getAdultLiteracyRate())
-                .collect(Collectors.toList());
-        Map<String, Double> allAdultLiteracyRatesStats = Statistics.calculateStatistics(allAdultLiteracyRates);
-
-        // Calculate correlation
-        List<Double> pairedInternetUsers = countries.stream()
-                .filter(country -> (country.getInternetUsers() != null) && (country.getAdultLiteracyRate() != null))
-                .map(country -> country.getInternetUsers())
-                .collect(Collectors.toList());
-        Map<String, Double> pairedInternetUsersStats = Statistics.calculateStatistics(pairedInternetUsers);
-        List<Double> pairedAdultLiteracyRates = countries.stream()
-                .filter(country -> (country.getInternetUsers() != null) && (country.getAdultLiteracyRate() != null))
-                .map(country -> country.getAdultLiteracyRate())
-                .collect(Collectors.toList());
-        Map<String, Double> pairedAdultLiteracyRatesStats = Statistics.calculateStatistics(pairedAdultLiteracyRates);
-        Double indicatorCorr = Statistics.calculateCorrelation(
-                pairedInternetUsers, pairedInternetUsersStats, pairedAdultLiteracyRates, pairedAdultLiteracyRatesStats
-        );
+        long start = Metrics.start();
+        IndicatorSummary summary = summarizeIndicators();
+        Metrics.record("statistics.summarize", start);
+        IndicatorStats allInternetUsersStats = summary.getInternetUsers();
+        IndicatorStats allAdultLiteracyRatesStats = summary.getAdultLiteracyRate();
 
         System.out.println(String.format(
                 "%s%n%s",
                 String.format("%-20s%15s%15s%15s%15s", "Indicator", "Min", "Max", "Count", "Average"),
                 String.join("", Collections.nCopies(80, "-"))
         ));
+        PrintWriter out = newOutputWriter();
+        TableWriter tableWriter = new TableWriter(out, -20, 15, 15, 15, 15);
+        try {
+            writeStatisticsRow(tableWriter, "Internet Users", allInternetUsersStats);
+            writeStatisticsRow(tableWriter, "Adult Literacy Rate", allAdultLiteracyRatesStats);
+            tableWriter.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // Percentiles come from a sketch fed by one scan of the indicator columns; the aggregates cannot give them
+        start = Metrics.start();
+        IndicatorTable table = getTable(false);
+        IndicatorQuantiles internetUsersQuantiles = Statistics.quantiles(table, Indicator.INTERNET_USERS);
+        IndicatorQuantiles adultLiteracyRateQuantiles = Statistics.quantiles(table, Indicator.ADULT_LITERACY_RATE);
+        Metrics.record("statistics.quantiles", start);
+        System.out.println(String.format(
+                "%n%s%n%s",
+                String.format("%-20s%10s%10s%10s%10s%10s%10s", "Indicator", "P10", "P25", "Median", "P75", "P90", "IQR"),
+                String.join("", Collections.nCopies(80, "-"))
+        ));
+        out = newOutputWriter();
+        tableWriter = new TableWriter(out, -20, 10, 10, 10, 10, 10, 10);
+        try {
+            writeQuantilesRow(tableWriter, "Internet Users", internetUsersQuantiles);
+            writeQuantilesRow(tableWriter, "Adult Literacy Rate", adultLiteracyRateQuantiles);
+            tableWriter.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        double rankError = Math.max(internetUsersQuantiles.getRankError(), adultLiteracyRateQuantiles.getRankError());
+        System.out.printf("%n* Percentiles: %s%n", rankError == 0.0
+                ? "exact" : String.format("approximate, rank error within %.2f%%", rankError * 100));
+
+        // Every pair of numeric Country columns from the Hibernate mapping, over the same columns
+        start = Metrics.start();
+        CorrelationMatrix matrix = CorrelationMatrix.compute(table,
+                CorrelationMatrix.numericIndicators(services().sessionFactory));
+        Metrics.record("statistics.correlationMatrix", start);
+        writeCorrelationMatrix(matrix);
+    }
+
+    private static void writeCorrelationMatrix(CorrelationMatrix matrix) {
+        // One row per indicator pair, each counted over the countries with both values
+        System.out.println(String.format(
+                "%n%s%n%s",
+                String.format("%-25s%-25s%15s%15s", "Indicator", "With", "Pairs", "Correlation"),
+                String.join("", Collections.nCopies(80, "-"))
+        ));
+        PrintWriter out = newOutputWriter();
+        TableWriter tableWriter = new TableWriter(out, -25, -25, 15, 15);
+        List<Indicator> indicators = matrix.getIndicators();
+        try {
+            for (int a = 0; a < indicators.size(); a++) {
+                for (int b = a + 1; b < indicators.size(); b++) {
+                    tableWriter.cell(indicators.get(a).getLabel())
+                            .cell(indicators.get(b).getLabel())
+                            .cell(Long.toString(matrix.getCount(indicators.get(a), indicators.get(b))))
+                            .cell(definedOrNull(matrix.getCorrelation(indicators.get(a), indicators.get(b))))
+                            .endRow();
+                }
+            }
+            tableWriter.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.printf("%n* Correlation matrix of %d indicators in %.1f ms, fork-join parallelism %d%n",
+                indicators.size(), matrix.getElapsedNanos() / 1e6, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    public static boolean viewStatisticsByYear() throws IOException, IllegalArgumentException {
+        // View statistics of an indicator for each year, optionally correlated with a second indicator
+        List<String> indicatorCodes = services().indicatorValueRepository.findIndicatorCodes();
+        if (indicatorCodes.isEmpty()) {
+            System.out.println("No indicator values yet: import a World Bank panel CSV file first.");
+            return true;
+        }
+        System.out.printf("Available indicators: %s%n", String.join(", ", indicatorCodes));
+        System.out.printf("Enter indicator code (default %s): ", indicatorCodes.get(0));
+        String indicatorCode = bufferedReader.readLine().trim();
+        if (indicatorCode.isEmpty()) {
+            indicatorCode = indicatorCodes.get(0);
+        } else if (!indicatorCodes.contains(indicatorCode)) {
+            throw new IllegalArgumentException("Indicator code must be one of the available indicators");
+        }
+        System.out.print("Enter first year (default 1960): ");
+        String fromYearText = bufferedReader.readLine().trim();
+        int fromYear = fromYearText.isEmpty() ? 1960 : Integer.parseInt(fromYearText);
+        System.out.print("Enter last year (default 2020): ");
+        String toYearText = bufferedReader.readLine().trim();
+        int toYear = toYearText.isEmpty() ? 2020 : Integer.parseInt(toYearText);
+        if (fromYear > toYear) {
+            throw new IllegalArgumentException("First year must not be after last year");
+        }
+        System.out.print("Correlate with indicator code (blank for none): ");
+        String otherIndicatorCode = bufferedReader.readLine().trim();
+        if (!otherIndicatorCode.isEmpty() && !indicatorCodes.contains(otherIndicatorCode)) {
+            throw new IllegalArgumentException("Indicator code must be one of the available indicators");
+        }
+
+        SortedMap<Integer, IndicatorStats> statsByYear =
+                services().indicatorValueRepository.summarizeByYear(indicatorCode, fromYear, toYear);
+        SortedMap<Integer, IndicatorQuantiles> quantilesByYear =
+                services().indicatorValueRepository.quantilesByYear(indicatorCode, fromYear, toYear);
+        SortedMap<Integer, PairedStats> pairedStatsByYear = otherIndicatorCode.isEmpty()
+                ? Collections.emptySortedMap()
+                : services().indicatorValueRepository.correlateByYear(indicatorCode, otherIndicatorCode, fromYear, toYear);
+        System.out.println(String.format(
+                "%n%s%n%s",
+                String.format("%-10s%15s%15s%15s%15s%15s%15s",
+                        "Year", "Min", "Max", "Count", "Average", "Median", "Correlation"),
+                String.join("", Collections.nCopies(100, "-"))
+        ));
+        PrintWriter out = newOutputWriter();
+        TableWriter tableWriter = new TableWriter(out, -10, 15, 15, 15, 15, 15, 15);
+        try {
+            for (Map.Entry<Integer, IndicatorStats> entry : statsByYear.entrySet()) {
+                IndicatorStats stats = entry.getValue();
+                PairedStats pairedStats = pairedStatsByYear.get(entry.getKey());
+                tableWriter.cell(Integer.toString(entry.getKey()))
+                        .cell(stats.getMin())
+                        .cell(stats.getMax())
+                        .cell((double) stats.getCount())
+                        .cell(stats.getMean())
+                        .cell(quantilesByYear.get(entry.getKey()).getMedian())
+                        .cell(pairedStats == null ? null : definedOrNull(pairedStats.getCorrelation()))
+                        .endRow();
+            }
+            tableWriter.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    public static boolean viewCorrelation() throws IOException, IllegalArgumentException {
+        // View Pearson, Spearman and Kendall correlation of an indicator pair with bootstrap confidence intervals:
+        // the country table's internet users and literacy, or two panel indicators over a range of years
+        List<String> indicatorCodes = services().indicatorValueRepository.findIndicatorCodes();
+        String indicatorCode = "";
+        if (!indicatorCodes.isEmpty()) {
+            System.out.printf("Available indicators: %s%n", String.join(", ", indicatorCodes));
+            System.out.print("Enter first indicator code (blank for internet users and literacy by country): ");
+            indicatorCode = bufferedReader.readLine().trim();
+        }
+        double[] valuesA;
+        double[] valuesB;
+        if (indicatorCode.isEmpty()) {
+            IndicatorTable table = getTable(false);
+            BitSet rows = table.getPairedValidity(Indicator.INTERNET_USERS, Indicator.ADULT_LITERACY_RATE);
+            valuesA = table.getValues(Indicator.INTERNET_USERS, rows);
+            valuesB = table.getValues(Indicator.ADULT_LITERACY_RATE, rows);
+        } else {
+            if (!indicatorCodes.contains(indicatorCode)) {
+                throw new IllegalArgumentException("Indicator code must be one of the available indicators");
+            }
+            System.out.print("Enter second indicator code: ");
+            String otherIndicatorCode = bufferedReader.readLine().trim();
+            if (!indicatorCodes.contains(otherIndicatorCode)) {
+                throw new IllegalArgumentException("Indicator code must be one of the available indicators");
+            }
+            System.out.print("Enter first year (default 1960): ");
+            String fromYearText = bufferedReader.readLine().trim();
+            int fromYear = fromYearText.isEmpty() ? 1960 : Integer.parseInt(fromYearText);
+            System.out.print("Enter last year (default 2020): ");
+            String toYearText = bufferedReader.readLine().trim();
+            int toYear = toYearText.isEmpty() ? 2020 : Integer.parseInt(toYearText);
+            if (fromYear > toYear) {
+                throw new IllegalArgumentException("First year must not be after last year");
+            }
+            double[][] pairs = services().indicatorValueRepository.findPairedValues(
+                    indicatorCode, otherIndicatorCode, fromYear, toYear);
+            valuesA = pairs[0];
+            valuesB = pairs[1];
+        }
+
+        // -Dstatistics.resamples and -Dstatistics.seed; the same seed gives the same intervals on any machine
+        int resamples = Integer.getInteger("statistics.resamples", 2000);
+        long seed = Long.getLong("statistics.seed", 42L);
+        BootstrapCorrelation bootstrap = new BootstrapCorrelation(resamples, 0.95, seed);
+        long start = System.nanoTime();
+        List<CorrelationInterval> intervals = new ArrayList<>();
+        for (CorrelationMethod method : CorrelationMethod.values()) {
+            intervals.add(bootstrap.estimate(method, valuesA, valuesB));
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        Metrics.record("statistics.bootstrap", start);
         System.out.println(String.format(
-                "%s",
-                String.format(
-                        "%-20s%15s%15s%15s%15s",
-                        "Internet Users",
-                        roundUpAndFormat(allInternetUsersStats.get("min")),
-                        roundUpAndFormat(allInternetUsersStats.get("max")),
-                        roundUpAndFormat(allInternetUsersStats.get("count")),
-                        roundUpAndFormat(allInternetUsersStats.get("avg"))
-                )
+                "%n%s%n%s",
+                String.format("%-20s%20s%20s%20s", "Method", "Coefficient", "95% CI Low", "95% CI High"),
+                String.join("", Collections.nCopies(80, "-"))
         ));
+        PrintWriter out = newOutputWriter();
+        TableWriter tableWriter = new TableWriter(out, -20, 20, 20, 20);
+        for (CorrelationInterval interval : intervals) {
+            tableWriter.cell(interval.getMethod().getLabel())
+                    .cell(definedOrNull(interval.getEstimate()))
+                    .cell(definedOrNull(interval.getLower()))
+                    .cell(definedOrNull(interval.getUpper()))
+                    .endRow();
+        }
+        tableWriter.flush();
+        System.out.printf("%n* %d bootstrap resamples of %d pairs (seed %d) in %d ms, fork-join parallelism %d%n",
+                resamples, valuesA.length, seed, elapsedMillis, ForkJoinPool.getCommonPoolParallelism());
+        return true;
+    }
+
+    public static void viewMetrics() {
+        // View operation latency percentiles and database counters recorded with -Dmetrics.enabled=true
+        if (!Metrics.isEnabled()) {
+            System.out.println("Metrics are disabled: start the application with -Dmetrics.enabled=true");
+            return;
+        }
+        SortedMap<String, LatencyHistogram> histograms = Metrics.getHistograms();
         System.out.println(String.format(
-                "%s",
-                String.format(
-                        "%-20s%15s%15s%15s%15s",
-                        "Adult Literacy Rate",
-                        roundUpAndFormat(allAdultLiteracyRatesStats.get("min")),
-                        roundUpAndFormat(allAdultLiteracyRatesStats.get("max")),
-                        roundUpAndFormat(allAdultLiteracyRatesStats.get("count")),
-                        roundUpAndFormat(allAdultLiteracyRatesStats.get("avg"))
-                )
+                "%s%n%s",
+                String.format("%-32s%12s%12s%12s%12s", "Operation", "Count", "P50 (ms)", "P99 (ms)", "Max (ms)"),
+                String.join("", Collections.nCopies(80, "-"))
         ));
-        System.out.printf("%n* Correlation: %s%n", roundUpAndFormat(indicatorCorr));
+        PrintWriter out = newOutputWriter();
+        try {
+            TableWriter tableWriter = new TableWriter(out, -32, 12, 12, 12, 12);
+            for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+                LatencyHistogram histogram = entry.getValue();
+                tableWriter.cell(entry.getKey())
+                        .cell(Long.toString(histogram.getCount()))
+                        .cell(histogram.getP50Millis())
+                        .cell(histogram.getP99Millis())
+                        .cell(histogram.getMaxMillis())
+                        .endRow();
+            }
+            tableWriter.flush();
+            out.printf("%n%-40s%40s%n%s%n", "Database", "Count", String.join("", Collections.nCopies(80, "-")));
+            for (Map.Entry<String, Long> counter : services().databaseStatistics.getCounters().entrySet()) {
+                out.printf("%-40s%40d%n", counter.getKey(), counter.getValue());
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Double definedOrNull(double value) {
+        // Undefined coefficients (constant columns, fewer than two pairs) show as --
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private static void writeStatisticsRow(TableWriter tableWriter, String label, IndicatorStats stats) throws IOException {
+        // Same layout as %-20s%15s%15s%15s%15s; no matching values shows min, max and average as --
+        boolean empty = stats.getCount() == 0;
+        tableWriter.cell(label)
+                .cell(empty ? null : stats.getMin())
+                .cell(empty ? null : stats.getMax())
+                .cell((double) stats.getCount())
+                .cell(empty ? null : stats.getMean())
+                .endRow();
+    }
+
+    private static void writeQuantilesRow(TableWriter tableWriter, String label, IndicatorQuantiles quantiles)
+            throws IOException {
+        // Same layout as %-20s%10s%10s%10s%10s%10s%10s; no data shows as --
+        boolean empty = quantiles.getCount() == 0;
+        tableWriter.cell(label)
+                .cell(empty ? null : quantiles.getP10())
+                .cell(empty ? null : quantiles.getP25())
+                .cell(empty ? null : quantiles.getMedian())
+                .cell(empty ? null : quantiles.getP75())
+                .cell(empty ? null : quantiles.getP90())
+                .cell(empty ? null : quantiles.getInterquartileRange())
+                .endRow();
+    }
+
+    private static IndicatorSummary summarizeIndicators() {
+        // Summarize indicators: -Dstatistics.source=auto (default) reads the running aggregates kept current
+        // by every write; database, memory and verify recompute (verify also checks the aggregates for drift)
+        String source = System.getProperty("statistics.source", "auto");
+        if (source.equals("auto")) {
+            try {
+                return services().countryService.getSummary();
+            } catch (HibernateException e) {
+                System.out.printf("Aggregate statistics failed (%s), falling back to an aggregate query%n", e.getMessage());
+            }
+        }
+        if (source.equals("memory")) {
+            return IndicatorSummary.fromTable(getTable(false));
+        }
+        IndicatorSummary summary;
+        try {
+            Session session = services().sessionFactory.openSession();
+            try {
+                summary = IndicatorSummary.fromDatabase(session);
+            } finally {
+                session.close();
+            }
+        } catch (HibernateException e) {
+            System.out.printf("Database aggregation failed (%s), falling back to in-memory statistics%n", e.getMessage());
+            return IndicatorSummary.fromTable(getTable(false));
+        }
+        if (source.equals("verify")) {
+            IndicatorSummary inMemorySummary = IndicatorSummary.fromTable(getTable(false));
+            if (!summary.agreesWith(inMemorySummary, 1e-9)) {
+                System.out.printf("Warning: database and in-memory statistics differ%n  database:  %s%n  in-memory: %s%n",
+                        summary, inMemorySummary);
+            }
+            if (!services().countryRepository.getAggregates().checkDrift()) {
+                System.out.println("Warning: indicator aggregates had drifted from the table and were recomputed");
+            }
+        }
+        return summary;
     }
 
     public static boolean addCountry() throws IOException, IllegalArgumentException {
@@ -119,55 +565,30 @@ public class Menu {
         String name = null;
         Double internetUsers = null;
         Double literacy = null;
-        List<Country> countries = getCountries();
-        List<String> countryCodes = countries.stream()
-                .map(country -> { return  country.getCode(); })
-                .collect(Collectors.toList());
+        CountryService countryService = services().countryService;
 
         // get code
         System.out.print("Enter code: ");
         code = bufferedReader.readLine();
-        if (code.length() != 3 || countryCodes.contains(code)) {
-            throw new IllegalArgumentException("Country code must be a new, unique, 3-character string");
-        }
+        countryService.checkNewCode(code);
 
         // get name
         System.out.print("Enter name: ");
         name = bufferedReader.readLine();
-        if (name.length() > 32) {
-            throw new IllegalArgumentException("Country name can have a maximum of 32 characters");
-        }
+        CountryService.checkName(name);
 
         // get internet users
         System.out.print("Enter internet users: ");
         internetUsers = Double.parseDouble(bufferedReader.readLine());
-        String internetUsersText = internetUsers.toString();
-        int digits = internetUsersText.indexOf(".");
-        int decimals = internetUsersText.length() - 1 - digits;
-        if (digits > 11 || decimals > 8) {
-            throw new IllegalArgumentException("Country internet users can have a maximum of 11 digits and 8 decimals");
-        }
+        CountryService.checkIndicatorValue("internet users", internetUsers);
 
         // get literacy
         System.out.print("Enter literacy: ");
         literacy = Double.parseDouble(bufferedReader.readLine());
-        String literacyText = literacy.toString();
-        digits = literacyText.indexOf(".");
-        decimals = literacyText.length() - 1 - digits;
-        if (digits > 11 || decimals > 8) {
-            throw new IllegalArgumentException("Country literacy can have a maximum of 11 digits and 8 decimals");
-        }
+        CountryService.checkIndicatorValue("literacy", literacy);
 
         // create and save new country
-        Country newCountry = new CountryBuilder(code, name)
-                .withInternetUsers(internetUsers)
-                .withAdultLiteracyRate(literacy)
-                .build();
-        Session session = sessionFactory.openSession();
-        session.beginTransaction();
-        session.save(newCountry);
-        session.getTransaction().commit();
-        session.close();
+        countryService.add(code, name, internetUsers, literacy);
         System.out.println("Country added successfully!");
         return true;
     }
@@ -178,72 +599,40 @@ public class Menu {
         String name = null;
         Double internetUsers = null;
         Double literacy = null;
-        List<Country> countries = getCountries();
-        List<String> countryCodes = countries.stream()
-                .map(country -> { return  country.getCode(); })
-                .collect(Collectors.toList());
+        CountryService countryService = services().countryService;
 
-        // get country to edit
-        System.out.print("Enter code: ");
-        code = bufferedReader.readLine();
-        if (!countryCodes.contains(code)) {
-            throw new IllegalArgumentException("Country code must be an existing, unique, 3-character string");
-        }
+        // get country to edit; its version guards against edits by other processes in the meantime
+        code = readCountryCode();
+        countryService.checkExistingCode(code);
         Country country = getCountryByCode(code);
 
         System.out.print("Enter new code: ");
-        code = bufferedReader.readLine();
-        if (code.equals(country.getCode())) {
-        }
-        else if (code.length() != 3 || countryCodes.contains(code)) {
-            throw new IllegalArgumentException("Country code must be a new, unique, 3-character string");
-        }
-        else {
-            country.setCode(code);
+        String newCode = bufferedReader.readLine();
+        if (!newCode.equals(country.getCode())) {
+            countryService.checkNewCode(newCode);
         }
 
         // get name
         System.out.print("Enter new name: ");
         name = bufferedReader.readLine();
-        if (name.length() > 32) {
-            throw new IllegalArgumentException("Country name can have a maximum of 32 characters");
-        }
-        else {
-            country.setName(name);
-        }
+        CountryService.checkName(name);
 
         // get internet users
         System.out.print("Enter new internet users: ");
         internetUsers = Double.parseDouble(bufferedReader.readLine());
-        String internetUsersText = internetUsers.toString();
-        int digits = internetUsersText.indexOf(".");
-        int decimals = internetUsersText.length() - 1 - digits;
-        if (digits > 11 || decimals > 8) {
-            throw new IllegalArgumentException("Country internet users can have a maximum of 11 digits and 8 decimals");
-        }
-        else {
-            country.setInternetUsers(internetUsers);
-        }
+        CountryService.checkIndicatorValue("internet users", internetUsers);
 
         // get literacy
         System.out.print("Enter new literacy: ");
         literacy = Double.parseDouble(bufferedReader.readLine());
-        String literacyText = literacy.toString();
-        digits = literacyText.indexOf(".");
-        decimals = literacyText.length() - 1 - digits;
-        if (digits > 11 || decimals > 8) {
-            throw new IllegalArgumentException("Country literacy can have a maximum of 11 digits and 8 decimals");
-        }
-        else {
-            country.setAdultLiteracyRate(literacy);
-        }
-
-        // edit and update country
-        Session session = sessionFactory.openSession();
-        session.beginTransaction();
-        session.update(country);
-        session.getTransaction().commit();
-        session.close();
+        CountryService.checkIndicatorValue("literacy", literacy);
+
+        // edit (and rename) country in one transaction
+        try {
+            countryService.edit(code, country.getVersion(), newCode, name, internetUsers, literacy);
+        } catch (StaleStateException e) {
+            throw new IllegalStateException("Country " + code + " was changed by another user, please edit it again");
+        }
         System.out.println("Country updated successfully!");
         return true;
     }
@@ -251,55 +640,92 @@ public class Menu {
     public static boolean deleteCountry() throws IOException, IllegalArgumentException {
         // Delete a country
         String code = null;
-        List<Country> countries = getCountries();
-        List<String> countryCodes = countries.stream()
-                .map(country -> {
-                    return country.getCode();
-                })
-                .collect(Collectors.toList());
+        CountryService countryService = services().countryService;
 
         // get country to delete
-        System.out.print("Enter code: ");
-        code = bufferedReader.readLine();
-        if (!countryCodes.contains(code)) {
-            throw new IllegalArgumentException("Country code must be an existing, unique, 3-character string");
-        }
-        Country country = getCountryByCode(code);
+        code = readCountryCode();
+        countryService.checkExistingCode(code);
 
         // delete country
-        Session session = sessionFactory.openSession();
-        session.beginTransaction();
-        session.delete(country);
-        session.getTransaction().commit();
-        session.close();
+        countryService.delete(code);
         System.out.println("Country deleted successfully!");
         return true;
     }
 
-    private static List<Country> getCountries() {
-        // Get a list of all the countries in the data table
-        Session session = sessionFactory.openSession();
-        Criteria criteria = session.createCriteria(Country.class);
-        List<Country> countries = criteria.list();
-        session.close();
-        return countries;
+    public static boolean importCountries() throws IOException, IllegalArgumentException {
+        // Bulk import countries from a data table (.txt) or CSV (.csv) file,
+        // or indicator values from a World Bank panel CSV file (has an Indicator Code column)
+        System.out.print("Enter file path: ");
+        Path path = Paths.get(bufferedReader.readLine().trim());
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalArgumentException("File not found: " + path);
+        }
+        if (IndicatorValueImporter.isPanelFile(path)) {
+            ImportResult result = new IndicatorValueImporter(services().sessionFactory).importFile(path);
+            System.out.println(result);
+            result.getErrors().forEach(System.out::println);
+            System.out.println("Indicator values imported successfully!");
+            return true;
+        }
+        ImportResult result;
+        try {
+            result = new CountryImporter(services().sessionFactory).importFile(path);
+        } finally {
+            // Writes bypassed the repository: drop its caches, and rebuild the persisted aggregates right away as
+            // the import command does, so no reader (in this or another process) sees them stale
+            services().countryRepository.invalidate();
+            services().countryRepository.getAggregates().rebuild();
+        }
+        System.out.println(result);
+        result.getErrors().forEach(System.out::println);
+        System.out.println("Countries imported successfully!");
+        return true;
+    }
+
+    private static IndicatorTable getTable(boolean withNames) {
+        // Columnar copy of the countries with only the columns a view needs (names only for views that show them)
+        return services().countryRepository.findTable(withNames);
+    }
+
+    private static String readCountryCode() throws IOException {
+        // Read the code of an existing country; text that is not a code is searched for, and the user picks one of
+        // the matches by number (a code typed in another case is taken as is)
+        System.out.print("Enter code (or part of a name to search): ");
+        String text = bufferedReader.readLine().trim();
+        if (text.isEmpty() || services().countryRepository.getCodeIndex().contains(text)) {
+            return text;
+        }
+        List<CountryMatch> matches = services().countryService.search(text, SEARCH_LIMIT);
+        if (matches.isEmpty()) {
+            return text;
+        }
+        if (matches.get(0).getKind() == CountryMatch.Kind.CODE) {
+            return matches.get(0).getCode();
+        }
+        printMatches(matches);
+        System.out.printf("Choose a country (1-%d): ", matches.size());
+        String choice = bufferedReader.readLine().trim();
+        try {
+            return matches.get(Integer.parseInt(choice) - 1).getCode();
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Choose a number from 1-" + matches.size());
+        }
+    }
+
+    private static void printMatches(List<CountryMatch> matches) {
+        // Numbered code and name of each match, best first
+        for (int i = 0; i < matches.size(); i++) {
+            System.out.printf("%3d. %-5s%s%n", i + 1, matches.get(i).getCode(), matches.get(i).getName());
+        }
     }
 
     private static Country getCountryByCode(String code) {
         // Get a country by country code
-        Session session = sessionFactory.openSession();
-        Country country = session.get(Country.class, code);
-        session.close();
-        return country;
+        return services().countryRepository.findByCode(code);
     }
 
     private static String roundUpAndFormat(Double value) {
-        // Round up and format doubles to 2 decimals
-        return String.format(
-                "%.2f",
-                new BigDecimal(value)
-                        .setScale(2, RoundingMode.HALF_UP)
-                        .doubleValue()
-                );
+        // Round up and format doubles to 2 decimals, showing undefined values as --
+        return value == null ? "--" : DecimalFormatter.format(value, 2);
     }
 }
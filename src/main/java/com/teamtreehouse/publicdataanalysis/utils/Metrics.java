@@ -0,0 +1,71 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// opt-in timings of successful operations (-Dmetrics.enabled=true): a latency histogram per operation, published
+// as JMX MXBeans under com.teamtreehouse.publicdataanalysis; when disabled, start() and record() test a constant
+// that the JIT folds away
+public class Metrics {
+    private static final boolean ENABLED = Boolean.getBoolean("metrics.enabled");
+    private static final String DOMAIN = "com.teamtreehouse.publicdataanalysis";
+    private static final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static long start() {
+        // Start timing an operation; pass the result to record()
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    public static void record(String operation, long startNanos) {
+        // Record an operation that started at startNanos and ends now
+        if (ENABLED) {
+            getHistogram(operation).record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public static LatencyHistogram getHistogram(String operation) {
+        // The histogram of an operation, created and registered with JMX on first use
+        LatencyHistogram histogram = histograms.get(operation);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(operation, created);
+            if (histogram == null) {
+                histogram = created;
+                register("Latency", operation, created);
+            }
+        }
+        return histogram;
+    }
+
+    public static SortedMap<String, LatencyHistogram> getHistograms() {
+        // Histograms recorded so far, by operation name
+        return new TreeMap<>(histograms);
+    }
+
+    public static DatabaseStatistics register(DatabaseStatistics databaseStatistics) {
+        // Publish Hibernate and cache counters (once per process); returns its argument
+        if (ENABLED) {
+            register("Database", "statistics", databaseStatistics);
+        }
+        return databaseStatistics;
+    }
+
+    private static void register(String type, String name, Object mxBean) {
+        // Metrics are diagnostics: a JMX failure (e.g. a duplicate name) must never fail the operation
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mxBean,
+                    new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            System.err.printf("Metrics: cannot register %s %s with JMX (%s)%n", type, name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+// single-pass (Welford) accumulator for two indicators and their co-moment
+public class PairedStatisticsAccumulator {
+    private long count;
+    private double minX = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY;
+    private double minY = Double.POSITIVE_INFINITY;
+    private double maxY = Double.NEGATIVE_INFINITY;
+    private double meanX;
+    private double meanY;
+    private double m2X;
+    private double m2Y;
+    private double coMoment;
+
+    public void accept(double x, double y) {
+        // Add a pair, updating both running means, squared deviations and the co-moment
+        count++;
+        double deltaX = x - meanX;
+        double deltaY = y - meanY;
+        meanX += deltaX / count;
+        meanY += deltaY / count;
+        m2X += deltaX * (x - meanX);
+        m2Y += deltaY * (y - meanY);
+        coMoment += deltaX * (y - meanY);
+        minX = Math.min(minX, x);
+        maxX = Math.max(maxX, x);
+        minY = Math.min(minY, y);
+        maxY = Math.max(maxY, y);
+    }
+
+    public void combine(PairedStatisticsAccumulator other) {
+        // Merge another accumulator into this one (Chan et al. parallel update)
+        combine(other.count, other.minX, other.maxX, other.minY, other.maxY, other.meanX, other.meanY,
+                other.m2X, other.m2Y, other.coMoment);
+    }
+
+    public void combine(PairedStats other) {
+        // Merge statistics computed elsewhere, e.g. by a two-pass kernel over one block of rows
+        IndicatorStats x = other.getFirst();
+        IndicatorStats y = other.getSecond();
+        combine(x.getCount(), x.getMin(), x.getMax(), y.getMin(), y.getMax(), x.getMean(), y.getMean(),
+                x.getSumOfSquaredDeviations(), y.getSumOfSquaredDeviations(), other.getCoMoment());
+    }
+
+    private void combine(long otherCount, double otherMinX, double otherMaxX, double otherMinY, double otherMaxY,
+                         double otherMeanX, double otherMeanY, double otherM2X, double otherM2Y,
+                         double otherCoMoment) {
+        if (otherCount == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = otherCount;
+            minX = otherMinX;
+            maxX = otherMaxX;
+            minY = otherMinY;
+            maxY = otherMaxY;
+            meanX = otherMeanX;
+            meanY = otherMeanY;
+            m2X = otherM2X;
+            m2Y = otherM2Y;
+            coMoment = otherCoMoment;
+            return;
+        }
+        long combinedCount = count + otherCount;
+        double deltaX = otherMeanX - meanX;
+        double deltaY = otherMeanY - meanY;
+        double weight = (double) count * otherCount / combinedCount;
+        meanX += deltaX * otherCount / combinedCount;
+        meanY += deltaY * otherCount / combinedCount;
+        m2X += otherM2X + deltaX * deltaX * weight;
+        m2Y += otherM2Y + deltaY * deltaY * weight;
+        coMoment += otherCoMoment + deltaX * deltaY * weight;
+        count = combinedCount;
+        minX = Math.min(minX, otherMinX);
+        maxX = Math.max(maxX, otherMaxX);
+        minY = Math.min(minY, otherMinY);
+        maxY = Math.max(maxY, otherMaxY);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public PairedStats toStats() {
+        return new PairedStats(
+                new IndicatorStats(count, minX, maxX, meanX, m2X),
+                new IndicatorStats(count, minY, maxY, meanY, m2Y),
+                coMoment
+        );
+    }
+}
@@ -0,0 +1,51 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+// immutable summary of two indicator columns observed together
+public class PairedStats {
+    private final IndicatorStats first;
+    private final IndicatorStats second;
+    private final double coMoment;
+
+    public PairedStats(IndicatorStats first, IndicatorStats second, double coMoment) {
+        this.first = first;
+        this.second = second;
+        this.coMoment = coMoment;
+    }
+
+    public IndicatorStats getFirst() {
+        return first;
+    }
+
+    public IndicatorStats getSecond() {
+        return second;
+    }
+
+    public long getCount() {
+        return first.getCount();
+    }
+
+    // Sum of (x - mean(x)) * (y - mean(y)) over all pairs
+    public double getCoMoment() {
+        return coMoment;
+    }
+
+    public double getCovariance() {
+        // Sample covariance (n - 1 denominator)
+        return getCount() < 2 ? Double.NaN : coMoment / (getCount() - 1);
+    }
+
+    public double getCorrelation() {
+        // Pearson correlation coefficient
+        return coMoment / Math.sqrt(first.getSumOfSquaredDeviations() * second.getSumOfSquaredDeviations());
+    }
+
+    @Override
+    public String toString() {
+        return "PairedStats{" +
+                "first=" + first +
+                ", second=" + second +
+                ", covariance=" + getCovariance() +
+                ", correlation=" + getCorrelation() +
+                '}';
+    }
+}
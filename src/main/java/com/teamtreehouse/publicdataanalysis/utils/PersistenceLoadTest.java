@@ -0,0 +1,441 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import com.teamtreehouse.publicdataanalysis.model.Country;
+import com.teamtreehouse.publicdataanalysis.model.CountryBuilder;
+import org.h2.api.ErrorCode;
+import org.h2.tools.Server;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.StatelessSession;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// closed-loop database load: simulated clients run a weighted mix of the menu's operations back to back against a
+// temporary seeded database, each with its own repository (like separate menu processes) and each read in its own
+// session (like the menu on a cache miss). Every storage profile starts from a copy of the same seed database and
+// every client replays the same random sequence, so profiles are compared on the same workload
+public class PersistenceLoadTest {
+    private static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String CODE_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    // Seed countries have letter codes; added ones start with a digit, so they never collide with a seed country
+    public static final int MAX_ROWS = LETTERS.length() * LETTERS.length() * LETTERS.length();
+    private static final String DATABASE_NAME = "worldbank";
+
+    public enum Operation {
+        // Menu "view data table": the code, name and indicator columns of every country
+        VIEW,
+        // Menu edit and delete: one country by code
+        LOOKUP,
+        // Menu "view statistics" over the table, in one aggregate query
+        STATS,
+        ADD,
+        // Read a country, then write new values with the version read (fails if another client wrote it since)
+        EDIT,
+        // Delete a country the client added (an add when it has none left)
+        DELETE;
+
+        public String getName() {
+            return name().toLowerCase();
+        }
+    }
+
+    // Which way an operation ended
+    private enum Outcome {
+        OK,
+        // Lock wait timed out, deadlock, or concurrent update of a locked row
+        LOCK_ERROR,
+        // Another client won: stale version, code taken or already deleted
+        CONFLICT,
+        ERROR
+    }
+
+    private final int clients;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final int rows;
+    private final Operation[] weightedOperations;
+
+    public PersistenceLoadTest(int clients, double seconds, double warmupSeconds, int rows, Map<Operation, Integer> mix) {
+        if (clients < 1 || seconds <= 0 || warmupSeconds < 0) {
+            throw new IllegalArgumentException("Clients and seconds must be positive");
+        }
+        if (rows < 1 || rows > MAX_ROWS) {
+            throw new IllegalArgumentException("Rows must be between 1 and " + MAX_ROWS);
+        }
+        this.clients = clients;
+        this.durationNanos = (long) (seconds * 1e9);
+        this.warmupNanos = (long) (warmupSeconds * 1e9);
+        this.rows = rows;
+        // One slot per unit of weight, so picking an operation is one random index
+        List<Operation> operations = new ArrayList<>();
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            if (entry.getValue() < 0) {
+                throw new IllegalArgumentException("Operation weights cannot be negative");
+            }
+            operations.addAll(Collections.nCopies(entry.getValue(), entry.getKey()));
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("The operation mix needs at least one operation");
+        }
+        this.weightedOperations = operations.toArray(new Operation[0]);
+    }
+
+    public static Map<Operation, Integer> defaultMix() {
+        // Mostly reads, like interactive use: 75% reads, 25% writes
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        mix.put(Operation.VIEW, 10);
+        mix.put(Operation.LOOKUP, 55);
+        mix.put(Operation.STATS, 10);
+        mix.put(Operation.ADD, 8);
+        mix.put(Operation.EDIT, 12);
+        mix.put(Operation.DELETE, 5);
+        return mix;
+    }
+
+    public static Map<Operation, Integer> parseMix(String text) {
+        // Weights as name=weight pairs, e.g. "lookup=80,edit=20"; operations not named are not run
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : text.split(",")) {
+            String[] nameAndWeight = part.trim().split("=");
+            Operation operation = null;
+            for (Operation candidate : Operation.values()) {
+                if (candidate.getName().equals(nameAndWeight[0])) {
+                    operation = candidate;
+                }
+            }
+            if (operation == null || nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Mix entries are <operation>=<weight>, operations: "
+                        + "view, lookup, stats, add, edit, delete");
+            }
+            try {
+                mix.put(operation, Integer.parseInt(nameAndWeight[1]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Operation weights must be whole numbers: " + part);
+            }
+        }
+        return mix;
+    }
+
+    public List<Result> run(List<StorageProfile> profiles) throws IOException, InterruptedException {
+        // Seed one database, then run the workload on a fresh copy of it per profile
+        Path directory = Files.createTempDirectory("worldbank-load");
+        try {
+            Path seed = directory.resolve("seed");
+            Files.createDirectories(seed);
+            seed(seed.resolve(DATABASE_NAME));
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < profiles.size(); i++) {
+                Path copy = directory.resolve("profile-" + i);
+                Files.createDirectories(copy);
+                Files.copy(seed.resolve(DATABASE_NAME + ".mv.db"), copy.resolve(DATABASE_NAME + ".mv.db"));
+                results.add(run(profiles.get(i), copy.resolve(DATABASE_NAME)));
+            }
+            return results;
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private void seed(Path database) {
+        // Create the schema, insert the seed countries and persist their indicator aggregates
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("hibernate.connection.url", "jdbc:h2:" + database.toAbsolutePath());
+        SessionFactory sessionFactory = Database.buildSessionFactory(settings);
+        try {
+            Random data = new Random(42);
+            StatelessSession session = sessionFactory.openStatelessSession();
+            try {
+                session.beginTransaction();
+                for (int i = 0; i < rows; i++) {
+                    session.insert(new CountryBuilder(seedCode(i), "Country " + i)
+                            .withInternetUsers(randomValue(data))
+                            .withAdultLiteracyRate(data.nextBoolean() ? null : randomValue(data))
+                            .build());
+                }
+                session.getTransaction().commit();
+            } finally {
+                session.close();
+            }
+            new IndicatorAggregates(sessionFactory).rebuild();
+        } finally {
+            sessionFactory.close();
+        }
+    }
+
+    private Result run(StorageProfile profile, Path database) throws IOException, InterruptedException {
+        // Open the database with the profile, run every client for the warmup and the measured duration
+        Server server = null;
+        SessionFactory sessionFactory = null;
+        try {
+            int port = 0;
+            if (profile.isTcp()) {
+                port = freePort();
+                server = Server.createTcpServer("-tcpPort", Integer.toString(port),
+                        "-baseDir", database.getParent().toAbsolutePath().toString()).start();
+            }
+            sessionFactory = Database.buildSessionFactory(profile.getSettings(database, port));
+            Result result = new Result(profile.getName(), clients);
+            List<Client> workers = new ArrayList<>();
+            CountDownLatch start = new CountDownLatch(1);
+            for (int i = 0; i < clients; i++) {
+                Client client = new Client(sessionFactory, result, start, new Random(1000 + i));
+                client.setName("load-client-" + i);
+                client.setDaemon(true);
+                workers.add(client);
+                client.start();
+            }
+            long startNanos = System.nanoTime();
+            for (Client client : workers) {
+                client.measureFrom = startNanos + warmupNanos;
+                client.deadline = startNanos + warmupNanos + durationNanos;
+            }
+            start.countDown();
+            for (Client client : workers) {
+                client.join();
+            }
+            result.seconds = (System.nanoTime() - startNanos - warmupNanos) / 1e9;
+            return result;
+        } catch (SQLException e) {
+            throw new IOException("Cannot start the H2 TCP server: " + e.getMessage(), e);
+        } finally {
+            if (sessionFactory != null) {
+                sessionFactory.close();
+            }
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String seedCode(int index) {
+        return "" + LETTERS.charAt(index / (26 * 26)) + LETTERS.charAt(index / 26 % 26) + LETTERS.charAt(index % 26);
+    }
+
+    private static Double randomValue(Random random) {
+        // Two decimals, like typed values, within the DECIMAL(11,8) columns
+        return Math.round(random.nextDouble() * 10000) / 100.0;
+    }
+
+    private static Outcome classify(RuntimeException e) {
+        // Look through Hibernate's wrappers for what went wrong
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StaleStateException || cause instanceof NoSuchElementException
+                    || cause instanceof IllegalArgumentException) {
+                return Outcome.CONFLICT;
+            }
+            if (cause instanceof SQLException) {
+                int errorCode = ((SQLException) cause).getErrorCode();
+                if (errorCode == ErrorCode.LOCK_TIMEOUT_1 || errorCode == ErrorCode.DEADLOCK_1
+                        || errorCode == ErrorCode.CONCURRENT_UPDATE_1) {
+                    return Outcome.LOCK_ERROR;
+                }
+                if (errorCode == ErrorCode.DUPLICATE_KEY_1) {
+                    return Outcome.CONFLICT;
+                }
+            }
+        }
+        return Outcome.ERROR;
+    }
+
+    // one simulated client: its own repository and service, as if it were a separate menu process
+    private class Client extends Thread {
+        private final SessionFactory sessionFactory;
+        private final CountryService countryService;
+        private final CountryProjection projection;
+        private final Result result;
+        private final CountDownLatch start;
+        private final Random random;
+        private final List<String> addedCodes = new ArrayList<>();
+        private volatile long measureFrom;
+        private volatile long deadline;
+
+        private Client(SessionFactory sessionFactory, Result result, CountDownLatch start, Random random) {
+            this.sessionFactory = sessionFactory;
+            this.countryService = new CountryService(new CountryRepository(sessionFactory));
+            this.projection = new CountryProjection(sessionFactory);
+            this.result = result;
+            this.start = start;
+            this.random = random;
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            while (now < deadline) {
+                Operation operation = weightedOperations[random.nextInt(weightedOperations.length)];
+                if (operation == Operation.DELETE && addedCodes.isEmpty()) {
+                    operation = Operation.ADD;
+                }
+                Outcome outcome;
+                try {
+                    execute(operation);
+                    outcome = Outcome.OK;
+                } catch (RuntimeException e) {
+                    outcome = classify(e);
+                    if (outcome == Outcome.ERROR) {
+                        result.lastError = e.toString();
+                    }
+                }
+                long end = System.nanoTime();
+                if (now >= measureFrom) {
+                    result.record(operation, end - now, outcome);
+                }
+                now = end;
+            }
+        }
+
+        private void execute(Operation operation) {
+            switch (operation) {
+                case VIEW:
+                    projection.readTable(true);
+                    break;
+                case LOOKUP:
+                    inSession(session -> session.get(Country.class, seedCode(random.nextInt(rows))));
+                    break;
+                case STATS:
+                    inSession(IndicatorSummary::fromDatabase);
+                    break;
+                case ADD:
+                    String code = "" + random.nextInt(10) + CODE_CHARACTERS.charAt(random.nextInt(36))
+                            + CODE_CHARACTERS.charAt(random.nextInt(36));
+                    countryService.add(code, "Added by " + getName(), randomValue(random), randomValue(random));
+                    addedCodes.add(code);
+                    break;
+                case EDIT:
+                    String editCode = seedCode(random.nextInt(rows));
+                    Country country = (Country) inSession(session -> session.get(Country.class, editCode));
+                    countryService.edit(editCode, country.getVersion(), editCode, country.getName(),
+                            randomValue(random), country.getAdultLiteracyRate());
+                    break;
+                case DELETE:
+                    int index = random.nextInt(addedCodes.size());
+                    if (!countryService.delete(addedCodes.get(index))) {
+                        throw new NoSuchElementException("Country not found: " + addedCodes.get(index));
+                    }
+                    addedCodes.remove(index);
+                    break;
+            }
+        }
+
+        private Object inSession(Function<Session, Object> work) {
+            // A session per operation, like the menu
+            Session session = sessionFactory.openSession();
+            try {
+                return work.apply(session);
+            } finally {
+                session.close();
+            }
+        }
+    }
+
+    // latencies and outcomes per operation of one profile's run
+    public static class Result {
+        private final String profile;
+        private final int clients;
+        private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, LongAdder[]> outcomes = new EnumMap<>(Operation.class);
+        private final LatencyHistogram allLatencies = new LatencyHistogram();
+        private volatile double seconds;
+        private volatile String lastError;
+
+        private Result(String profile, int clients) {
+            this.profile = profile;
+            this.clients = clients;
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LatencyHistogram());
+                LongAdder[] counts = new LongAdder[Outcome.values().length];
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = new LongAdder();
+                }
+                outcomes.put(operation, counts);
+            }
+        }
+
+        private void record(Operation operation, long nanos, Outcome outcome) {
+            latencies.get(operation).record(nanos);
+            allLatencies.record(nanos);
+            outcomes.get(operation)[outcome.ordinal()].increment();
+        }
+
+        public String getProfile() {
+            return profile;
+        }
+
+        public int getClients() {
+            return clients;
+        }
+
+        // Measured duration, without the warmup
+        public double getSeconds() {
+            return seconds;
+        }
+
+        // Latencies of one operation, or of all operations for null; failed attempts are included
+        public LatencyHistogram getLatencies(Operation operation) {
+            return operation == null ? allLatencies : latencies.get(operation);
+        }
+
+        public double getOperationsPerSecond(Operation operation) {
+            return seconds > 0 ? getLatencies(operation).getCount() / seconds : 0.0;
+        }
+
+        public long getLockErrors(Operation operation) {
+            return count(operation, Outcome.LOCK_ERROR);
+        }
+
+        public long getConflicts(Operation operation) {
+            return count(operation, Outcome.CONFLICT);
+        }
+
+        public long getOtherErrors(Operation operation) {
+            return count(operation, Outcome.ERROR);
+        }
+
+        // The last unexpected error, or null
+        public String getLastError() {
+            return lastError;
+        }
+
+        private long count(Operation operation, Outcome outcome) {
+            // One operation, or all operations for null
+            long count = 0;
+            for (Map.Entry<Operation, LongAdder[]> entry : outcomes.entrySet()) {
+                if (operation == null || entry.getKey() == operation) {
+                    count += entry.getValue()[outcome.ordinal()].sum();
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+
+// mergeable KLL quantile sketch (Karnin, Lang, Liberty 2016): a stack of compactors, where level h holds values
+// of weight 2^h; a full level is sorted and every other value is promoted. Memory is bounded by about 3k values
+// whatever the stream length, and quantiles are exact until level 0 first fills (k values).
+public class QuantileSketch implements DoubleConsumer, Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final int DEFAULT_K = 200;
+    // Capacity of each level relative to the one above it, and the floor for the lowest levels
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    private static final int MIN_CAPACITY = 8;
+
+    private final int k;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double[][] levels = {new double[MIN_CAPACITY]};
+    private int[] sizes = {0};
+    // Capacity of each level, recomputed when a level is added
+    private int[] capacities;
+    // xorshift state for the promotion offsets; a plain long so the sketch stays serializable
+    private long randomState = 0x9E3779B97F4A7C15L;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k) {
+        if (k < MIN_CAPACITY) {
+            throw new IllegalArgumentException("Sketch size k must be at least " + MIN_CAPACITY);
+        }
+        this.k = k;
+        this.capacities = new int[] {k};
+    }
+
+    public static double getNormalizedRankError(int k) {
+        // Rank error bound at 99% confidence for a single quantile, fitted by the Apache DataSketches KLL
+        // implementation (1.33% for k = 200); a reported p50 lies between the true p48.7 and p51.3
+        return 2.296 / Math.pow(k, 0.9723);
+    }
+
+    @Override
+    public void accept(double value) {
+        // Add a value (NaN has no rank and is ignored)
+        if (Double.isNaN(value)) {
+            return;
+        }
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        append(0, value);
+        if (sizes[0] >= capacities[0]) {
+            compress();
+        }
+    }
+
+    public void merge(QuantileSketch other) {
+        // Add another sketch of the same k, e.g. one built per partition, level by level
+        if (other.k != k) {
+            throw new IllegalArgumentException("Only sketches with the same k can be merged");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        int otherLevels = other.sizes.length;
+        for (int level = 0; level < otherLevels; level++) {
+            double[] values = Arrays.copyOf(other.levels[level], other.sizes[level]);
+            for (double value : values) {
+                append(level, value);
+            }
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        compress();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public boolean isExact() {
+        // True while nothing has been compacted, i.e. every value is still held with weight 1
+        return sizes.length == 1;
+    }
+
+    public int getRetainedCount() {
+        int retained = 0;
+        for (int size : sizes) {
+            retained += size;
+        }
+        return retained;
+    }
+
+    // Same conventions as DoubleSummaryStatistics: +Infinity when empty
+    public double getMin() {
+        return min;
+    }
+
+    // Same conventions as DoubleSummaryStatistics: -Infinity when empty
+    public double getMax() {
+        return max;
+    }
+
+    public double getQuantile(double fraction) {
+        // Value at a normalized rank between 0 (min) and 1 (max); NaN when empty
+        return getQuantiles(fraction)[0];
+    }
+
+    public double[] getQuantiles(double... fractions) {
+        // Several quantiles from one sort of the retained values (lower nearest rank, like getQuantile)
+        for (double fraction : fractions) {
+            if (!(fraction >= 0.0 && fraction <= 1.0)) {
+                throw new IllegalArgumentException("Quantile fractions must be between 0 and 1");
+            }
+        }
+        double[] quantiles = new double[fractions.length];
+        if (count == 0) {
+            Arrays.fill(quantiles, Double.NaN);
+            return quantiles;
+        }
+        // Sort the retained values by value, each weighted 2^level, and walk the cumulative weight
+        int retained = getRetainedCount();
+        double[] values = new double[retained];
+        int[] valueLevels = new int[retained];
+        Integer[] order = new Integer[retained];
+        int n = 0;
+        for (int level = 0; level < sizes.length; level++) {
+            for (int i = 0; i < sizes[level]; i++) {
+                values[n] = levels[level][i];
+                valueLevels[n] = level;
+                order[n] = n;
+                n++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        for (int q = 0; q < fractions.length; q++) {
+            if (fractions[q] == 0.0) {
+                quantiles[q] = min;
+            } else if (fractions[q] == 1.0) {
+                quantiles[q] = max;
+            } else {
+                // First value whose cumulative weight reaches the target rank (total weight is count)
+                long target = (long) Math.ceil(fractions[q] * count);
+                long cumulative = 0;
+                int i = 0;
+                for (; i < retained - 1; i++) {
+                    cumulative += 1L << valueLevels[order[i]];
+                    if (cumulative >= target) {
+                        break;
+                    }
+                }
+                quantiles[q] = values[order[i]];
+            }
+        }
+        return quantiles;
+    }
+
+    private void updateCapacities() {
+        // Top level holds k values, each level below 2/3 of the one above, never fewer than MIN_CAPACITY
+        capacities = new int[sizes.length];
+        for (int level = 0; level < sizes.length; level++) {
+            int depth = sizes.length - 1 - level;
+            capacities[level] = Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+        }
+    }
+
+    private void append(int level, double value) {
+        while (level >= sizes.length) {
+            int newLevel = sizes.length;
+            levels = Arrays.copyOf(levels, newLevel + 1);
+            sizes = Arrays.copyOf(sizes, newLevel + 1);
+            levels[newLevel] = new double[MIN_CAPACITY];
+            updateCapacities();
+        }
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+        }
+        levels[level][sizes[level]++] = value;
+    }
+
+    private void compress() {
+        // Compact the lowest full level into the next one until every level is within its capacity
+        boolean compacted = true;
+        while (compacted) {
+            compacted = false;
+            for (int level = 0; level < sizes.length; level++) {
+                if (sizes[level] >= capacities[level]) {
+                    compact(level);
+                    compacted = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    private void compact(int level) {
+        // Sort the level and promote the values at even or odd positions (random offset) with double weight;
+        // with an odd size the smallest value stays behind, so the total weight is preserved exactly
+        double[] values = levels[level];
+        int size = sizes[level];
+        Arrays.sort(values, 0, size);
+        int kept = size % 2;
+        for (int i = kept + nextBit(); i < size; i += 2) {
+            append(level + 1, values[i]);
+        }
+        sizes[level] = kept;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // Trim the level buffers so only retained values are written
+        for (int level = 0; level < sizes.length; level++) {
+            levels[level] = Arrays.copyOf(levels[level], Math.max(sizes[level], 1));
+        }
+        out.defaultWriteObject();
+    }
+
+    private int nextBit() {
+        randomState ^= randomState << 13;
+        randomState ^= randomState >>> 7;
+        randomState ^= randomState << 17;
+        return (int) (randomState >>> 63);
+    }
+
+    @Override
+    public String toString() {
+        return "QuantileSketch{" +
+                "k=" + k +
+                ", count=" + count +
+                ", retained=" + getRetainedCount() +
+                ", exact=" + isExact() +
+                '}';
+    }
+}
@@ -0,0 +1,183 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.util.Arrays;
+
+// rank correlation over primitive arrays: Spearman's rho (Pearson over average ranks) and Kendall's tau-b
+// (Knight's O(n log n) algorithm); both handle ties
+public class RankCorrelation {
+    public static double spearman(double[] indicatorA, double[] indicatorB) {
+        // Pearson correlation of the ranks; tied values share their average rank
+        checkPaired(indicatorA, indicatorB);
+        return Statistics.correlate(ranks(indicatorA), ranks(indicatorB)).getCorrelation();
+    }
+
+    public static double kendall(double[] indicatorA, double[] indicatorB) {
+        // Tau-b: (concordant - discordant) pairs, normalized for ties in either indicator
+        checkPaired(indicatorA, indicatorB);
+        int n = indicatorA.length;
+        if (n < 2) {
+            return Double.NaN;
+        }
+        // Order by A, then B, and count pairs tied in A and tied in both
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        sortIndices(order, indicatorA, indicatorB);
+        long tiedA = 0;
+        long runA = 1;
+        for (int i = 1; i < n; i++) {
+            if (indicatorA[order[i]] == indicatorA[order[i - 1]]) {
+                runA++;
+            } else {
+                tiedA += runA * (runA - 1) / 2;
+                runA = 1;
+            }
+        }
+        tiedA += runA * (runA - 1) / 2;
+        long tiedBoth = jointTies(order, indicatorA, indicatorB);
+        // Discordant pairs are the inversions left in B; merge sort counts them while sorting
+        double[] b = new double[n];
+        for (int i = 0; i < n; i++) {
+            b[i] = indicatorB[order[i]];
+        }
+        long discordant = countInversions(b, new double[n], 0, n);
+        long tiedB = 0;
+        long runB = 1;
+        for (int i = 1; i < n; i++) {
+            if (b[i] == b[i - 1]) {
+                runB++;
+            } else {
+                tiedB += runB * (runB - 1) / 2;
+                runB = 1;
+            }
+        }
+        tiedB += runB * (runB - 1) / 2;
+        long pairs = (long) n * (n - 1) / 2;
+        double numerator = pairs - tiedA - tiedB + tiedBoth - 2.0 * discordant;
+        return numerator / Math.sqrt((double) (pairs - tiedA) * (pairs - tiedB));
+    }
+
+    public static double[] ranks(double[] values) {
+        // 1-based ranks; each run of equal values gets the average of the ranks it spans
+        double[] sorted = Arrays.copyOf(values, values.length);
+        Arrays.sort(sorted);
+        double[] ranks = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            int first = lowerBound(sorted, values[i]);
+            int last = upperBound(sorted, values[i]);
+            ranks[i] = (first + 1 + last) / 2.0;
+        }
+        return ranks;
+    }
+
+    private static void checkPaired(double[] indicatorA, double[] indicatorB) {
+        if (indicatorA.length != indicatorB.length) {
+            throw new IllegalArgumentException("Paired indicators must have the same number of values");
+        }
+    }
+
+    private static long jointTies(int[] order, double[] indicatorA, double[] indicatorB) {
+        // Pairs tied in both A and B; after sortIndices they are adjacent runs
+        long tied = 0;
+        long run = 1;
+        for (int i = 1; i < order.length; i++) {
+            if (indicatorA[order[i]] == indicatorA[order[i - 1]] && indicatorB[order[i]] == indicatorB[order[i - 1]]) {
+                run++;
+            } else {
+                tied += run * (run - 1) / 2;
+                run = 1;
+            }
+        }
+        return tied + run * (run - 1) / 2;
+    }
+
+    private static int lowerBound(double[] sorted, double value) {
+        // Index of the first element >= value
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBound(double[] sorted, double value) {
+        // Index of the first element > value
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void sortIndices(int[] order, double[] primary, double[] secondary) {
+        // Stable merge sort of row indices by (primary, secondary), without boxing
+        int[] buffer = new int[order.length];
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int low = 0; low < order.length - width; low += 2 * width) {
+                int mid = low + width;
+                int high = Math.min(low + 2 * width, order.length);
+                int left = low;
+                int right = mid;
+                int out = low;
+                while (left < mid && right < high) {
+                    int a = order[left];
+                    int b = order[right];
+                    int cmp = Double.compare(primary[a], primary[b]);
+                    if (cmp == 0) {
+                        cmp = Double.compare(secondary[a], secondary[b]);
+                    }
+                    buffer[out++] = cmp <= 0 ? order[left++] : order[right++];
+                }
+                while (left < mid) {
+                    buffer[out++] = order[left++];
+                }
+                while (right < high) {
+                    buffer[out++] = order[right++];
+                }
+                System.arraycopy(buffer, low, order, low, high - low);
+            }
+        }
+    }
+
+    private static long countInversions(double[] values, double[] buffer, int low, int high) {
+        // Sort values[low, high) and return the number of pairs i < j with values[i] > values[j]
+        if (high - low < 2) {
+            return 0;
+        }
+        int mid = (low + high) >>> 1;
+        long inversions = countInversions(values, buffer, low, mid) + countInversions(values, buffer, mid, high);
+        int left = low;
+        int right = mid;
+        int out = low;
+        while (left < mid && right < high) {
+            if (values[left] <= values[right]) {
+                buffer[out++] = values[left++];
+            } else {
+                // Every remaining left value is greater than values[right]
+                inversions += mid - left;
+                buffer[out++] = values[right++];
+            }
+        }
+        while (left < mid) {
+            buffer[out++] = values[left++];
+        }
+        while (right < high) {
+            buffer[out++] = values[right++];
+        }
+        System.arraycopy(buffer, low, values, low, high - low);
+        return inversions;
+    }
+}
@@ -0,0 +1,163 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// writes flat records with fixed columns as CSV (header line first) or as a JSON array of objects
+public abstract class RecordWriter {
+    protected final Writer writer;
+    protected final String[] columns;
+
+    protected RecordWriter(Writer writer, String... columns) {
+        this.writer = writer;
+        this.columns = columns;
+    }
+
+    public static RecordWriter forFormat(String format, Writer writer, String... columns) {
+        // Get a writer for "csv" or "json"
+        switch (format) {
+            case "csv":
+                return new CsvRecordWriter(writer, columns);
+            case "json":
+                return new JsonRecordWriter(writer, columns);
+            default:
+                throw new IllegalArgumentException("Format must be csv or json");
+        }
+    }
+
+    // Values are written in column order; null is an empty CSV field or a JSON null
+    public abstract void writeRecord(Object... values) throws IOException;
+
+    // Completes the document and flushes; must be called once even when no record was written
+    public abstract void finish() throws IOException;
+
+    public static void writeJsonObject(Writer writer, String[] columns, Object... values) throws IOException {
+        // Write one record as a single JSON object, e.g. for a single-resource HTTP response
+        writer.write('{');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(", ");
+            }
+            JsonRecordWriter.writeString(writer, columns[i]);
+            writer.write(": ");
+            JsonRecordWriter.writeValue(writer, values[i]);
+        }
+        writer.write('}');
+    }
+
+    private static class CsvRecordWriter extends RecordWriter {
+        private boolean headerWritten;
+
+        private CsvRecordWriter(Writer writer, String... columns) {
+            super(writer, columns);
+        }
+
+        @Override
+        public void writeRecord(Object... values) throws IOException {
+            writeHeader();
+            writeLine(values);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writeHeader();
+            writer.flush();
+        }
+
+        private void writeHeader() throws IOException {
+            if (!headerWritten) {
+                headerWritten = true;
+                writeLine((Object[]) columns);
+            }
+        }
+
+        private void writeLine(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                if (values[i] != null) {
+                    writeField(values[i].toString());
+                }
+            }
+            writer.write('\n');
+        }
+
+        private void writeField(String field) throws IOException {
+            // Quote fields with separators, quotes or line breaks (RFC 4180)
+            if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+                writer.write(field);
+                return;
+            }
+            writer.write('"');
+            writer.write(field.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    private static class JsonRecordWriter extends RecordWriter {
+        private boolean first = true;
+
+        private JsonRecordWriter(Writer writer, String... columns) {
+            super(writer, columns);
+        }
+
+        @Override
+        public void writeRecord(Object... values) throws IOException {
+            writer.write(first ? "[\n  " : ",\n  ");
+            first = false;
+            writeJsonObject(writer, columns, values);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.write(first ? "[]\n" : "\n]\n");
+            writer.flush();
+        }
+
+        private static void writeValue(Writer writer, Object value) throws IOException {
+            if (value == null) {
+                writer.write("null");
+            } else if (value instanceof Double || value instanceof Float) {
+                // JSON has no NaN or infinity
+                double number = ((Number) value).doubleValue();
+                writer.write(Double.isNaN(number) || Double.isInfinite(number) ? "null" : value.toString());
+            } else if (value instanceof Number || value instanceof Boolean) {
+                writer.write(value.toString());
+            } else {
+                writeString(writer, value.toString());
+            }
+        }
+
+        private static void writeString(Writer writer, String text) throws IOException {
+            writer.write('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '"':
+                        writer.write("\\\"");
+                        break;
+                    case '\\':
+                        writer.write("\\\\");
+                        break;
+                    case '\n':
+                        writer.write("\\n");
+                        break;
+                    case '\r':
+                        writer.write("\\r");
+                        break;
+                    case '\t':
+                        writer.write("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            writer.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            writer.write(c);
+                        }
+                }
+            }
+            writer.write('"');
+        }
+    }
+}
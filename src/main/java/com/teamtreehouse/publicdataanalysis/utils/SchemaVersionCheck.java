@@ -0,0 +1,141 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.MetadataImplementor;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Index;
+import org.hibernate.mapping.Table;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.tool.hbm2ddl.SchemaUpdate;
+import org.hibernate.tool.hbm2ddl.SchemaValidator;
+import org.hibernate.tool.schema.TargetType;
+import org.hibernate.tool.schema.spi.SchemaManagementException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+
+// replaces hbm2ddl.auto=update: the mapped schema is fingerprinted, and the database is only introspected
+// and migrated when the fingerprint differs from the one stored by the last migration
+public class SchemaVersionCheck {
+    public static final String CURRENT = "current";
+    public static final String VALIDATED = "validated";
+    public static final String VALIDATION_FAILED = "validation failed";
+    public static final String MIGRATED = "migrated";
+    // DDL the mapping cannot express, run after every migration and part of the fingerprint: H2 cannot walk an
+    // index backwards, so descending top-N queries (CountryQuery) need indexes sorted descending
+    private static final List<String> EXTRA_DDL = Arrays.asList(
+            "CREATE INDEX IF NOT EXISTS idx_country_internet_users_desc ON Country (internetUsers DESC, code DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_country_adult_literacy_rate_desc ON Country (adultLiteracyRate DESC, code DESC)"
+    );
+
+    public static String run(ServiceRegistry registry, Metadata metadata) {
+        // Compare fingerprints; -Dschema.validate=true also validates an unchanged schema against the database
+        String fingerprint = fingerprint(registry.getService(JdbcServices.class).getDialect(), metadata);
+        ConnectionProvider connectionProvider = registry.getService(ConnectionProvider.class);
+        try {
+            Connection connection = connectionProvider.getConnection();
+            try {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("CREATE TABLE IF NOT EXISTS SchemaVersion ("
+                            + "id INT PRIMARY KEY, fingerprint VARCHAR(64) NOT NULL, migratedAt TIMESTAMP NOT NULL)");
+                }
+                if (fingerprint.equals(storedFingerprint(connection))) {
+                    connection.commit();
+                    if (Boolean.getBoolean("schema.validate")) {
+                        // Mismatches are reported, not fatal: legacy databases store the indicators as DECIMAL
+                        try {
+                            new SchemaValidator().validate(metadata, registry);
+                        } catch (SchemaManagementException e) {
+                            System.err.println("Warning: " + e.getMessage());
+                            return VALIDATION_FAILED;
+                        }
+                        return VALIDATED;
+                    }
+                    return CURRENT;
+                }
+                migrate(registry, metadata);
+                try (Statement statement = connection.createStatement()) {
+                    for (String ddl : EXTRA_DDL) {
+                        statement.execute(ddl);
+                    }
+                }
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "MERGE INTO SchemaVersion (id, fingerprint, migratedAt) KEY (id) VALUES (1, ?, CURRENT_TIMESTAMP)")) {
+                    statement.setString(1, fingerprint);
+                    statement.executeUpdate();
+                }
+                connection.commit();
+                return MIGRATED;
+            } finally {
+                connectionProvider.closeConnection(connection);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Schema version check failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static String storedFingerprint(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT fingerprint FROM SchemaVersion WHERE id = 1")) {
+            return resultSet.next() ? resultSet.getString(1) : null;
+        }
+    }
+
+    private static void migrate(ServiceRegistry registry, Metadata metadata) {
+        // Same additive migration hbm2ddl.auto=update did on every launch
+        SchemaUpdate schemaUpdate = new SchemaUpdate().setHaltOnError(true);
+        schemaUpdate.execute(EnumSet.of(TargetType.DATABASE), metadata, registry);
+        if (!schemaUpdate.getExceptions().isEmpty()) {
+            throw new IllegalStateException("Schema migration failed: " + schemaUpdate.getExceptions().get(0));
+        }
+    }
+
+    private static String fingerprint(Dialect dialect, Metadata metadata) {
+        // SHA-256 over the create statement and indexes of every mapped table, in name order
+        List<String> definitions = new ArrayList<>();
+        for (Table table : metadata.collectTableMappings()) {
+            StringBuilder definition = new StringBuilder(
+                    table.sqlCreateString(dialect, (MetadataImplementor) metadata, null, null));
+            Iterator<Index> indexes = table.getIndexIterator();
+            while (indexes.hasNext()) {
+                Index index = indexes.next();
+                definition.append(';').append(index.getName());
+                Iterator<Column> columns = index.getColumnIterator();
+                while (columns.hasNext()) {
+                    definition.append(',').append(columns.next().getName());
+                }
+            }
+            definitions.add(definition.toString());
+        }
+        definitions.addAll(EXTRA_DDL);
+        definitions.sort(null);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String definition : definitions) {
+                digest.update(definition.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+// wall-clock startup phases, recorded from any thread; offsets are milliseconds since JVM start
+public class StartupTimings {
+    private static final long originNanos = System.nanoTime();
+    private static final long originUptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    private static final List<String[]> phases = new ArrayList<>();
+
+    public static long start() {
+        // Start timing a phase; pass the result to record()
+        return System.nanoTime();
+    }
+
+    public static void record(String phase, long startNanos) {
+        // Record a phase that started at startNanos and ends now
+        long endNanos = System.nanoTime();
+        String[] entry = {
+                phase,
+                Thread.currentThread().getName(),
+                DecimalFormatter.format(offsetMillis(startNanos), 1),
+                DecimalFormatter.format((endNanos - startNanos) / 1e6, 1)
+        };
+        synchronized (phases) {
+            phases.add(entry);
+        }
+    }
+
+    public static String report() {
+        // Phases in the order they finished, e.g. for -Dstartup.report=true
+        StringBuilder report = new StringBuilder(String.format(
+                "%-40s%-28s%12s%12s%n", "Startup phase", "Thread", "Start (ms)", "Time (ms)"
+        ));
+        synchronized (phases) {
+            for (String[] entry : phases) {
+                report.append(String.format("%-40s%-28s%12s%12s%n", (Object[]) entry));
+            }
+        }
+        return report.toString();
+    }
+
+    private static double offsetMillis(long nanos) {
+        return originUptimeMillis + (nanos - originNanos) / 1e6;
+    }
+}
@@ -1,80 +1,145 @@
 package com.teamtreehouse.publicdataanalysis.utils;
 
-import com.teamtreehouse.publicdataanalysis.Application;
+import com.teamtreehouse.publicdataanalysis.model.Indicator;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorColumns;
+import com.teamtreehouse.publicdataanalysis.model.IndicatorValue;
 
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
 
 public class Statistics {
+    public static IndicatorStats summarize(double[] indicator) {
+        // Calculate indicator statistics in a single pass
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        for (double value : indicator) {
+            accumulator.accept(value);
+        }
+        return accumulator.toStats();
+    }
+
+    public static IndicatorStats summarize(DoubleStream indicator) {
+        // Calculate indicator statistics in a single pass (parallel streams are combined)
+        return indicator
+                .collect(StatisticsAccumulator::new, StatisticsAccumulator::accept, StatisticsAccumulator::combine)
+                .toStats();
+    }
+
+    public static IndicatorQuantiles quantiles(double[] indicator) {
+        // Estimate percentiles in a single pass with bounded memory
+        QuantileSketch sketch = new QuantileSketch();
+        for (double value : indicator) {
+            sketch.accept(value);
+        }
+        return IndicatorQuantiles.fromSketch(sketch);
+    }
+
+    public static IndicatorQuantiles quantiles(DoubleStream indicator) {
+        // Estimate percentiles in a single pass (parallel streams build a sketch per partition and merge them)
+        return IndicatorQuantiles.fromSketch(
+                indicator.collect(QuantileSketch::new, QuantileSketch::accept, QuantileSketch::merge)
+        );
+    }
+
+    public static PairedStats correlate(double[] indicatorA, double[] indicatorB) {
+        // Calculate paired statistics and co-moment in a single pass
+        if (indicatorA.length != indicatorB.length) {
+            throw new IllegalArgumentException("Paired indicators must have the same number of values");
+        }
+        PairedStatisticsAccumulator accumulator = new PairedStatisticsAccumulator();
+        for (int i = 0; i < indicatorA.length; i++) {
+            accumulator.accept(indicatorA[i], indicatorB[i]);
+        }
+        return accumulator.toStats();
+    }
+
+    public static IndicatorStats summarize(IndicatorColumns table, Indicator indicator) {
+        // Calculate statistics over the rows where the indicator has data
+        return summarize(table, indicator, allRows(table));
+    }
+
+    public static IndicatorStats summarize(IndicatorColumns table, Indicator indicator, BitSet selected) {
+        // Calculate statistics over the selected rows where the indicator has data
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        BitSet rows = table.getValidity(indicator);
+        rows.and(selected);
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            accumulator.accept(table.getValue(indicator, row));
+        }
+        return accumulator.toStats();
+    }
+
+    public static IndicatorQuantiles quantiles(IndicatorColumns table, Indicator indicator) {
+        // Estimate percentiles over the rows where the indicator has data
+        QuantileSketch sketch = new QuantileSketch();
+        BitSet rows = table.getValidity(indicator);
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            sketch.accept(table.getValue(indicator, row));
+        }
+        return IndicatorQuantiles.fromSketch(sketch);
+    }
+
+    public static PairedStats correlate(IndicatorColumns table, Indicator indicatorA, Indicator indicatorB) {
+        // Calculate paired statistics over the rows where both indicators have data
+        return correlate(table, indicatorA, indicatorB, allRows(table));
+    }
+
+    public static PairedStats correlate(IndicatorColumns table, Indicator indicatorA, Indicator indicatorB,
+                                        BitSet selected) {
+        // Calculate paired statistics over the selected rows where both indicators have data
+        PairedStatisticsAccumulator accumulator = new PairedStatisticsAccumulator();
+        BitSet rows = table.getPairedValidity(indicatorA, indicatorB);
+        rows.and(selected);
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            accumulator.accept(table.getValue(indicatorA, row), table.getValue(indicatorB, row));
+        }
+        return accumulator.toStats();
+    }
+
+    public static IndicatorStats summarize(Collection<IndicatorValue> values) {
+        // Calculate statistics over panel values, e.g. one indicator across countries for a year
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        for (IndicatorValue value : values) {
+            accumulator.accept(value.getValue());
+        }
+        return accumulator.toStats();
+    }
+
     public static Map<String, Double> calculateStatistics(List<Double> indicator) {
-        // Calculate indicator statistics
+        // Calculate indicator statistics (map keyed by min, max, count and avg)
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        for (Double value : indicator) {
+            accumulator.accept(value);
+        }
+        IndicatorStats stats = accumulator.toStats();
         Map<String, Double> indicatorStats = new HashMap<>();
-        Double indicatorMin = indicator.stream()
-                .collect(Collectors.summarizingDouble(Double::doubleValue))
-                .getMin();
-        indicatorStats.put("min", indicatorMin);
-        Double indicatorMax = indicator.stream()
-                .collect(Collectors.summarizingDouble(Double::doubleValue))
-                .getMax();
-        indicatorStats.put("max", indicatorMax);
-        Long indicatorCount = indicator.stream()
-                .collect(Collectors.summarizingDouble(Double::doubleValue))
-                .getCount();
-        indicatorStats.put("count", (double) indicatorCount);
-        Double indicatorAvg = indicator.stream()
-                .collect(Collectors.summarizingDouble(Double::doubleValue))
-                .getAverage();
-        indicatorStats.put("avg", indicatorAvg);
+        indicatorStats.put("min", stats.getMin());
+        indicatorStats.put("max", stats.getMax());
+        indicatorStats.put("count", (double) stats.getCount());
+        indicatorStats.put("avg", stats.getMean());
         return indicatorStats;
     }
 
     public static Double calculateCorrelation(
             List<Double> indicatorA, Map<String, Double> indicatorAStats,
             List<Double> indicatorB, Map<String, Double> indicatorBStats) {
-        // Calculate correlation between two indicators
-        Double indicatorAAvg = indicatorAStats.get("avg");
-        Double indicatorACount = indicatorAStats.get("count");
-        Double indicatorAStdDev = calculateStdDev(indicatorA, indicatorAAvg, indicatorACount);
-        List<Double> stdIndicatorA = standardize(indicatorA, indicatorAAvg, indicatorAStdDev);
-
-        Double indicatorBAvg = indicatorBStats.get("avg");
-        Double indicatorBCount = indicatorBStats.get("count");
-        Double indicatorBStdDev = calculateStdDev(indicatorB, indicatorBAvg, indicatorBCount);
-        List<Double> stdIndicatorB = standardize(indicatorB, indicatorBAvg, indicatorBStdDev);
-
-        Double stdIndicatorDotProd = 0.0;
-        Double[] stdIndicatorAArr = stdIndicatorA.toArray(new Double[stdIndicatorA.size()]);
-        Double[] stdIndicatorBArr = stdIndicatorB.toArray(new Double[stdIndicatorB.size()]);
-        for (int i = 0; i < indicatorACount; i++) {
-            stdIndicatorDotProd += stdIndicatorAArr[i] * stdIndicatorBArr[i];
+        // Calculate correlation between two indicators (the stats maps are no longer needed)
+        if (indicatorA.size() != indicatorB.size()) {
+            throw new IllegalArgumentException("Paired indicators must have the same number of values");
         }
-        return stdIndicatorDotProd / (indicatorACount - 1);
-    }
-
-    private static Double calculateStdDev(List<Double> indicator, Double indicatorAvg, Double indicatorCount) {
-        // Calculate indicator standard deviation
-        Double indicatorVar = indicator.stream()
-                .map((indicatorVal) -> {
-                    return Math.pow(
-                            (indicatorVal - indicatorAvg),
-                            2.0
-                    );
-                })
-                .reduce((indicatorCurrVal, indicatorNextVal) -> {
-                    return indicatorCurrVal + indicatorNextVal;
-                })
-                .orElseThrow(RuntimeException::new)
-                / (indicatorCount - 1);
-        return Math.sqrt(indicatorVar);
+        PairedStatisticsAccumulator accumulator = new PairedStatisticsAccumulator();
+        for (int i = 0; i < indicatorA.size(); i++) {
+            accumulator.accept(indicatorA.get(i), indicatorB.get(i));
+        }
+        return accumulator.toStats().getCorrelation();
     }
 
-    private static List<Double> standardize(List<Double> indicator, Double indicatorAvg, Double indicatorStdDev) {
-        // Standardize indicator values
-        List<Double> stdIndicator = indicator.stream()
-                .map((indicatorVal) -> {return (indicatorVal - indicatorAvg) / indicatorStdDev;})
-                .collect(Collectors.toList());
-        return stdIndicator;
+    private static BitSet allRows(IndicatorColumns table) {
+        BitSet rows = new BitSet(table.getRowCount());
+        rows.set(0, table.getRowCount());
+        return rows;
     }
 }
@@ -0,0 +1,53 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.util.function.DoubleConsumer;
+
+// single-pass (Welford) accumulator for min, max, count, mean and variance
+public class StatisticsAccumulator implements DoubleConsumer {
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double mean;
+    private double m2;
+
+    @Override
+    public void accept(double value) {
+        // Add a value, updating the running mean and sum of squared deviations
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void combine(StatisticsAccumulator other) {
+        // Merge another accumulator into this one (Chan et al. parallel update)
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = other.count;
+            min = other.min;
+            max = other.max;
+            mean = other.mean;
+            m2 = other.m2;
+            return;
+        }
+        long combinedCount = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / combinedCount;
+        m2 += other.m2 + delta * delta * count * other.count / combinedCount;
+        count = combinedCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public IndicatorStats toStats() {
+        return new IndicatorStats(count, min, max, mean, m2);
+    }
+}
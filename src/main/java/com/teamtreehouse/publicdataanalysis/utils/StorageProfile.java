@@ -0,0 +1,116 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import org.hibernate.cfg.AvailableSettings;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+// how a database is opened: embedded or through a local H2 TCP server, plus optional H2 and connection pool tuning.
+// Written as a base and settings joined by '+', e.g. "embedded", "tcp+pool=0" or "embedded+cache=256+statements=64";
+// unset options keep the defaults of hibernate.cfg.xml and H2
+public class StorageProfile {
+    private final String name;
+    private final boolean tcp;
+    // MVStore page cache in MB (H2 default 16)
+    private Integer cacheMegabytes;
+    // Hibernate built-in pool size (default 20); 0 opens a connection per session
+    private Integer poolSize;
+    // Parsed statements H2 keeps per connection and reuses for the same SQL (H2 default 8)
+    private Integer statementCacheSize;
+    // How long a statement waits for a locked row or table before failing (H2 default 1000)
+    private Integer lockTimeoutMillis;
+
+    private StorageProfile(String name, boolean tcp) {
+        this.name = name;
+        this.tcp = tcp;
+    }
+
+    public static StorageProfile parse(String spec) {
+        String[] parts = spec.trim().split("\\+");
+        if (!parts[0].equals("embedded") && !parts[0].equals("tcp")) {
+            throw new IllegalArgumentException("Storage profile must start with embedded or tcp: " + spec);
+        }
+        StorageProfile profile = new StorageProfile(spec.trim(), parts[0].equals("tcp"));
+        for (int i = 1; i < parts.length; i++) {
+            int equals = parts[i].indexOf('=');
+            String option = equals < 0 ? parts[i] : parts[i].substring(0, equals);
+            int value;
+            try {
+                value = Integer.parseInt(parts[i].substring(equals + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Storage option needs a whole number, e.g. cache=64: " + parts[i]);
+            }
+            if (value < 0) {
+                throw new IllegalArgumentException("Storage option cannot be negative: " + parts[i]);
+            }
+            switch (option) {
+                case "cache":
+                    profile.cacheMegabytes = value;
+                    break;
+                case "pool":
+                    profile.poolSize = value;
+                    break;
+                case "statements":
+                    profile.statementCacheSize = value;
+                    break;
+                case "lockTimeout":
+                    profile.lockTimeoutMillis = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown storage option " + option
+                            + " (cache, pool, statements or lockTimeout)");
+            }
+        }
+        return profile;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isTcp() {
+        return tcp;
+    }
+
+    public String getUrl(Path database, int tcpPort) {
+        // JDBC URL of the database file (without the .mv.db extension); a TCP server must serve the file's directory
+        StringBuilder url = new StringBuilder(tcp
+                ? "jdbc:h2:tcp://localhost:" + tcpPort + "/" + database.getFileName()
+                : "jdbc:h2:" + database.toAbsolutePath());
+        if (cacheMegabytes != null) {
+            url.append(";CACHE_SIZE=").append(cacheMegabytes * 1024);
+        }
+        if (statementCacheSize != null) {
+            url.append(";QUERY_CACHE_SIZE=").append(statementCacheSize);
+        }
+        if (lockTimeoutMillis != null) {
+            url.append(";LOCK_TIMEOUT=").append(lockTimeoutMillis);
+        }
+        return url.toString();
+    }
+
+    public Map<String, Object> getSettings(Path database, int tcpPort) {
+        // Hibernate settings overriding hibernate.cfg.xml, for Database.buildSessionFactory()
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(AvailableSettings.URL, getUrl(database, tcpPort));
+        if (poolSize != null && poolSize == 0) {
+            settings.put(AvailableSettings.CONNECTION_PROVIDER, UnpooledConnectionProvider.class.getName());
+        } else if (poolSize != null) {
+            settings.put(AvailableSettings.POOL_SIZE, poolSize.toString());
+        }
+        return settings;
+    }
+
+    @Override
+    public String toString() {
+        return "StorageProfile{" +
+                "name='" + name + '\'' +
+                ", tcp=" + tcp +
+                ", cacheMegabytes=" + cacheMegabytes +
+                ", poolSize=" + poolSize +
+                ", statementCacheSize=" + statementCacheSize +
+                ", lockTimeoutMillis=" + lockTimeoutMillis +
+                '}';
+    }
+}
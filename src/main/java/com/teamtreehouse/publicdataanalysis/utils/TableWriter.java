@@ -0,0 +1,72 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// writes fixed-width rows like String.format("%-10s%15s...") through one reusable row buffer
+public class TableWriter {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Writer writer;
+    private final int[] widths;
+    private final StringBuilder row = new StringBuilder(128);
+    private final StringBuilder cell = new StringBuilder(32);
+    private char[] buffer = new char[128];
+    private int column;
+
+    // Widths follow printf: a negative width left-aligns the column (%-10s), a positive one right-aligns it (%15s)
+    public TableWriter(Writer writer, int... widths) {
+        this.writer = writer;
+        this.widths = widths.clone();
+    }
+
+    public TableWriter cell(CharSequence text) {
+        // Pad a cell to its column width; longer text is not truncated
+        int width = widths[column++];
+        int padding = Math.abs(width) - text.length();
+        if (width > 0) {
+            pad(padding);
+        }
+        row.append(text);
+        if (width < 0) {
+            pad(padding);
+        }
+        return this;
+    }
+
+    public TableWriter cell(Double value) {
+        // Format an indicator cell to 2 decimals, showing missing data as --
+        if (value == null) {
+            return cell("--");
+        }
+        return cell(value.doubleValue());
+    }
+
+    public TableWriter cell(double value) {
+        cell.setLength(0);
+        return cell(DecimalFormatter.append(cell, value, 2));
+    }
+
+    public void endRow() throws IOException {
+        // Write the row and a line separator, then reuse the buffers for the next row
+        row.append(LINE_SEPARATOR);
+        int length = row.length();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+        row.getChars(0, length, buffer, 0);
+        writer.write(buffer, 0, length);
+        row.setLength(0);
+        column = 0;
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    private void pad(int count) {
+        for (int i = 0; i < count; i++) {
+            row.append(' ');
+        }
+    }
+}
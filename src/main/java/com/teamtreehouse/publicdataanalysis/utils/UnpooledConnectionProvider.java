@@ -0,0 +1,63 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+
+// opens a new JDBC connection for every session and closes it when the session ends, for measuring what Hibernate's
+// built-in pool saves (set hibernate.connection.provider_class to this class)
+public class UnpooledConnectionProvider implements ConnectionProvider, Configurable {
+    private static final long serialVersionUID = 1L;
+
+    private String url;
+    private String username;
+    private String password;
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void configure(Map configurationValues) {
+        url = (String) configurationValues.get(AvailableSettings.URL);
+        if (url == null) {
+            throw new IllegalStateException("No connection URL set in " + AvailableSettings.URL);
+        }
+        username = configurationValues.containsKey(AvailableSettings.USER)
+                ? (String) configurationValues.get(AvailableSettings.USER) : "";
+        password = configurationValues.containsKey(AvailableSettings.PASS)
+                ? (String) configurationValues.get(AvailableSettings.PASS) : "";
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(url, username, password);
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return unwrapType.isInstance(this);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (!isUnwrappableAs(unwrapType)) {
+            throw new UnknownUnwrapTypeException(unwrapType);
+        }
+        return unwrapType.cast(this);
+    }
+}
@@ -0,0 +1,105 @@
+package com.teamtreehouse.publicdataanalysis.utils;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+// routing of the HTTP API: only /countries, /countries/{code} and /statistics reach the handlers' operations
+public class HttpApiServerTest {
+    private static SessionFactory sessionFactory;
+    private static CountryService countryService;
+    private static HttpApiServer server;
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        // A private in-memory database with the schema created by Hibernate
+        Map<String, Object> settings = new HashMap<>();
+        settings.put(AvailableSettings.URL, "jdbc:h2:mem:http-api-test;DB_CLOSE_DELAY=-1");
+        settings.put(AvailableSettings.HBM2DDL_AUTO, "create");
+        sessionFactory = Database.buildSessionFactory(settings);
+        countryService = new CountryService(new CountryRepository(sessionFactory));
+        countryService.add("USA", "United States", 74.55, null);
+        server = new HttpApiServer(countryService, new InetSocketAddress("127.0.0.1", 0), 2);
+        server.start();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop(0);
+        sessionFactory.close();
+    }
+
+    @Test
+    public void countryPathsReachTheHandler() throws IOException {
+        assertEquals(200, request("GET", "/countries", null));
+        assertEquals(200, request("GET", "/countries/USA", null));
+        assertEquals(404, request("GET", "/countries/XYZ", null));
+        assertEquals(201, request("PUT", "/countries/ZZ8", "name=Testland&internetUsers=12.5"));
+        assertEquals(200, request("PUT", "/countries/ZZ8", "name=Testland&internetUsers=13.5"));
+        assertEquals(204, request("DELETE", "/countries/ZZ8", null));
+    }
+
+    @Test
+    public void pathsSharingThePrefixAreNotFound() throws IOException {
+        assertEquals(404, request("GET", "/countriesXUSA", null));
+        assertEquals(404, request("PUT", "/countriesXZZ9", "name=Typo"));
+        assertNull(countryService.findByCode("ZZ9"));
+        assertEquals(404, request("DELETE", "/countriesXUSA", null));
+        assertEquals(200, request("GET", "/countries/USA", null));
+        assertEquals(404, request("GET", "/statisticsX", null));
+        assertEquals(200, request("GET", "/statistics", null));
+    }
+
+    @Test
+    public void emptyOrNestedCodesAreNotFound() throws IOException {
+        assertEquals(404, request("GET", "/countries/", null));
+        assertEquals(404, request("PUT", "/countries/", "name=Empty"));
+        assertEquals(404, request("PUT", "/countries/ZZ7/extra", "name=Nested"));
+        assertNull(countryService.findByCode("ZZ7"));
+        assertEquals(404, request("DELETE", "/countries/USA/", null));
+        assertEquals(200, request("GET", "/countries/USA", null));
+    }
+
+    @Test
+    public void countryCodeAcceptsOnlyOneNonEmptySegment() {
+        assertEquals("USA", HttpApiServer.countryCode("/countries/USA"));
+        assertNull(HttpApiServer.countryCode("/countries"));
+        assertNull(HttpApiServer.countryCode("/countries/"));
+        assertNull(HttpApiServer.countryCode("/countriesXUSA"));
+        assertNull(HttpApiServer.countryCode("/countries/USA/"));
+        assertNull(HttpApiServer.countryCode("/countries/a/b"));
+    }
+
+    private static int request(String method, String path, String form) throws IOException {
+        // Send a request and return its status, discarding the body
+        URL url = new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod(method);
+            if (form != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(form.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}